@@ -0,0 +1,50 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sets up what the plugin code expects from a running server: a Bukkit server with its registries,
+ * the plugin instance and its default configuration.
+ * <p>
+ * The plugin is loaded but not enabled, so nothing touches the network or the world.
+ * Persistence of fetched chunk data is turned off, the benchmarks only work with {@link Fixtures}.
+ */
+public final class BenchmarkEnvironment {
+
+    private static boolean ready;
+
+    private BenchmarkEnvironment() {
+        throw new IllegalStateException();
+    }
+
+    public static synchronized void setUp() {
+        if (ready) return;
+        ServerMock server = MockBukkit.mock();
+
+        PluginDescriptionFile description = new PluginDescriptionFile("Terraplusminus", "benchmark", Terraplusminus.class.getName());
+        Terraplusminus.instance = (Terraplusminus) server.getPluginManager().loadPlugin(Terraplusminus.class, description, new Object[0]);
+
+        try (InputStream stream = Terraplusminus.class.getResourceAsStream("/config.yml")) {
+            if (stream == null) throw new IllegalStateException("Missing default config.yml");
+            Terraplusminus.config = YamlConfiguration.loadConfiguration(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the default configuration", e);
+        }
+        Terraplusminus.config.set("chunk_data_store", false);
+        Terraplusminus.config.set("prefetch.enabled", false);
+        Terraplusminus.config.set("batching.window_millis", 0);
+        Terraplusminus.config.set("biomes.use_dataset", true);
+        Terraplusminus.config.set("generate_trees", true);
+        ready = true;
+    }
+
+}
@@ -0,0 +1,27 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark JAR. Same command line as JMH's own, with the GC profiler always on
+ * so allocation rates ({@code gc.alloc.rate.norm}, in bytes per operation) are part of every result.
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+        throw new IllegalStateException();
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()
+        ).run();
+    }
+
+}
@@ -0,0 +1,73 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.gen.CustomBiomeProvider;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import org.bukkit.block.Biome;
+import org.bukkit.generator.WorldInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CustomBiomeProvider#getBiome(WorldInfo, int, int, int)}, which Paper calls for every 4x4x4 cell of every chunk.
+ * Queries walk a chunk the way Paper does, so any per chunk caching is exercised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BiomeBenchmark {
+
+    private static final int CHUNKS = 256;
+
+    private CustomBiomeProvider provider;
+    private WorldInfo worldInfo;
+    private final int[] chunkX = new int[CHUNKS];
+    private final int[] chunkZ = new int[CHUNKS];
+    private int next;
+
+    @Setup
+    public void setUp() throws OutOfProjectionBoundsException {
+        BenchmarkEnvironment.setUp();
+        GeographicProjection projection = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS).projection();
+        this.provider = new CustomBiomeProvider(projection);
+        this.worldInfo = Stubs.worldInfo();
+        Random random = new Random(0);
+        for (int i = 0; i < CHUNKS; i++) {
+            double[] block = projection.fromGeo(14 + random.nextDouble() * 10, 49 + random.nextDouble() * 6);
+            this.chunkX[i] = (int) Math.floor(block[0]) >> 4;
+            this.chunkZ[i] = (int) Math.floor(block[1]) >> 4;
+        }
+    }
+
+    /**
+     * @return the biome of the 16 cells of one section of the next chunk
+     */
+    @Benchmark
+    public Biome getBiomeSection() {
+        int i = this.next;
+        this.next = (this.next + 1) % CHUNKS;
+        Biome biome = null;
+        for (int x = 0; x < 16; x += 4) {
+            for (int z = 0; z < 16; z += 4) {
+                biome = this.provider.getBiome(this.worldInfo, this.chunkX[i] * 16 + x, 64, this.chunkZ[i] * 16 + z);
+            }
+        }
+        return biome;
+    }
+
+}
@@ -0,0 +1,116 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.data.UpstreamGateway;
+import de.btegermany.terraplusminus.fixtures.FixtureServer;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import net.buildtheearth.terraminusminus.util.http.Disk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Fetching the data of every fixture chunk through {@link TerrainDataService} and its rate limiter,
+ * from a {@link FixtureServer} replaying recorded upstream responses with injected faults,
+ * relayed by an {@link UpstreamGateway} as on a server.
+ * Each operation starts from empty caches, so every chunk is actually fetched.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FetchBenchmark {
+
+    public static final String RESOURCE = "/fixtures/responses.zip";
+
+    @Param({"0", "50"})
+    public long latencyMillis;
+
+    @Param({"0.0", "0.05"})
+    public double throttleRate;
+
+    private FixtureServer server;
+    private UpstreamGateway gateway;
+    private Path archive;
+    private Path cacheRoot;
+    private List<ChunkPos> positions;
+    private TerrainDataService dataService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkEnvironment.setUp();
+        this.archive = Files.createTempFile("terraplusminus-responses", ".zip");
+        try (InputStream stream = FetchBenchmark.class.getResourceAsStream(RESOURCE)) {
+            if (stream == null) throw new IllegalStateException("No recorded responses at " + RESOURCE + ", record some with FixtureRecorder");
+            Files.copy(stream, this.archive, REPLACE_EXISTING);
+        }
+        FixtureServer.Faults faults = new FixtureServer.Faults(this.latencyMillis, this.latencyMillis / 2, this.throttleRate, 0.0d);
+        this.server = FixtureServer.open(FixtureServer.Mode.REPLAY, this.archive, this.archive.getParent(), faults);
+        this.gateway = UpstreamGateway.open(this.server.getRoutedConfigRoot(), 0);
+        Disk.setConfigRoot(this.gateway.getRoutedConfigRoot().toFile());
+        this.positions = new ArrayList<>(Fixtures.load().keySet());
+    }
+
+    @Setup(Level.Invocation)
+    public void acquireService() throws IOException {
+        this.cacheRoot = Files.createTempDirectory("terraplusminus-cache");
+        Disk.setCacheRoot(this.cacheRoot.toFile());
+        this.dataService = TerrainDataService.acquireDefault();
+    }
+
+    @TearDown(Level.Invocation)
+    public void releaseService() {
+        this.dataService.release();
+        Fixtures.deleteRecursively(this.cacheRoot);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.gateway.close();
+        this.server.close(); // Also deletes its routed dataset configurations
+        Fixtures.deleteRecursively(this.archive);
+    }
+
+    @Benchmark
+    public int fetchFixtureChunks() {
+        List<CompletableFuture<CachedChunkData>> futures = new ArrayList<>(this.positions.size());
+        for (ChunkPos pos : this.positions) {
+            CompletableFuture<CachedChunkData> future;
+            while ((future = this.dataService.request(pos, 0)) == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1)); // Waiting for the rate limiter, as pre-generation does
+            }
+            futures.add(future);
+        }
+        int fetched = 0;
+        for (CompletableFuture<CachedChunkData> future : futures) {
+            if (future.exceptionally(error -> null).join() != null) fetched++;
+        }
+        return fetched;
+    }
+
+}
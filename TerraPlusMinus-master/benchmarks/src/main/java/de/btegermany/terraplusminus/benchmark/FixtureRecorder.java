@@ -0,0 +1,70 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.fixtures.FixtureServer;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.ChunkDataLoader;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import net.buildtheearth.terraminusminus.util.http.Disk;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches real chunk data and writes it as benchmark {@link Fixtures}. This is the only part of the benchmarks that needs network access.
+ * The raw upstream responses are recorded along the way through a {@link FixtureServer}, for {@link FetchBenchmark}.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar de.btegermany.terraplusminus.benchmark.FixtureRecorder [output file] [dataset config directory]}.
+ * The default output is the fixture resource of this module, re-package the benchmarks afterward.
+ * Only the datasets configured in the given directory (Terra--'s {@code heights/}, {@code tree_cover/} and {@code osm.json5})
+ * go through the recording server, the plugin directory of a configured server is a good choice.
+ */
+public final class FixtureRecorder {
+
+    private static final Path DEFAULT_OUTPUT = Path.of("src/main/resources" + Fixtures.RESOURCE);
+    private static final Path RESPONSES_OUTPUT = Path.of("src/main/resources" + FetchBenchmark.RESOURCE);
+
+    private FixtureRecorder() {
+        throw new IllegalStateException();
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkEnvironment.setUp();
+        Path output = args.length > 0 ? Path.of(args[0]) : DEFAULT_OUTPUT;
+        Path datasets = args.length > 1 ? Path.of(args[1]) : Terraplusminus.instance.getDataPath();
+        FixtureServer recorder = FixtureServer.open(FixtureServer.Mode.RECORD, RESPONSES_OUTPUT, datasets, FixtureServer.Faults.NONE);
+        Disk.setConfigRoot(recorder.getRoutedConfigRoot().toFile());
+        Path cacheRoot = Files.createTempDirectory("terraplusminus-cache");
+        Disk.setCacheRoot(cacheRoot.toFile());
+
+        ChunkDataLoader loader = new ChunkDataLoader(EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS));
+
+        Map<ChunkPos, CachedChunkData> fixtures = new LinkedHashMap<>();
+        for (double[] location : Fixtures.TERRAIN_SETS.values()) {
+            ChunkPos center = Fixtures.center(location);
+            for (int dx = -Fixtures.RADIUS_CHUNKS; dx <= Fixtures.RADIUS_CHUNKS; dx++) {
+                for (int dz = -Fixtures.RADIUS_CHUNKS; dz <= Fixtures.RADIUS_CHUNKS; dz++) {
+                    ChunkPos pos = new ChunkPos(center.x() + dx, center.z() + dz);
+                    fixtures.put(pos, loader.load(pos).get(1, TimeUnit.MINUTES));
+                }
+            }
+            System.out.println("Recorded " + fixtures.size() + " chunks");
+        }
+
+        Files.createDirectories(output.getParent());
+        try (OutputStream stream = Files.newOutputStream(output)) {
+            Fixtures.write(fixtures, stream);
+        }
+        System.out.println("Wrote " + fixtures.size() + " chunks to " + output.toAbsolutePath());
+        recorder.close();
+        Fixtures.deleteRecursively(cacheRoot);
+        System.out.println("Wrote upstream responses to " + RESPONSES_OUTPUT.toAbsolutePath());
+        System.exit(0); // Terra--'s HTTP client keeps non-daemon threads around
+    }
+
+}
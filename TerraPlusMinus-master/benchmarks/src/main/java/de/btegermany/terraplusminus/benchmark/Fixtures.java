@@ -0,0 +1,233 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.data.ChunkDataCodec;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorPipelines;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import net.buildtheearth.terraminusminus.substitutes.BlockState;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import net.buildtheearth.terraminusminus.substitutes.TerraBukkit;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Chunk data the benchmarks run against.
+ * <p>
+ * Recorded fixtures are read from {@value #RESOURCE}, see {@link FixtureRecorder}.
+ * Each record is the chunk position followed by its {@link ChunkDataCodec} encoding.
+ * The chunks are recorded around a few {@link #TERRAIN_SETS locations}, and can be loaded per terrain set to compare them.
+ * Without recorded fixtures, loading fails: numbers measured on anything else are not comparable.
+ * Deterministic synthetic terrain, which exercises the same code paths but is not representative of real terrain,
+ * can be asked for explicitly with {@code -D}{@value #SYNTHETIC_PROPERTY}{@code =true}, e.g. to check that the benchmarks run.
+ */
+public final class Fixtures {
+
+    public static final String RESOURCE = "/fixtures/chunks.bin.gz";
+    public static final String SYNTHETIC_PROPERTY = "terraplusminus.syntheticFixtures";
+
+    /**
+     * The recorded locations as latitude and longitude, by terrain set. A set is the chunks within {@link #RADIUS_CHUNKS} of its location.
+     */
+    static final Map<String, double[]> TERRAIN_SETS = terrainSets();
+    static final int RADIUS_CHUNKS = 3;
+
+    private static final int SYNTHETIC_SIZE = 8;
+
+    private static Map<ChunkPos, CachedChunkData> chunks;
+    private static Map<String, Map<ChunkPos, CachedChunkData>> sets;
+
+    private Fixtures() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @return the fixtures, in a stable order
+     */
+    public static synchronized Map<ChunkPos, CachedChunkData> load() {
+        if (chunks != null) return chunks;
+        try (InputStream stream = Fixtures.class.getResourceAsStream(RESOURCE)) {
+            if (Boolean.getBoolean(SYNTHETIC_PROPERTY)) {
+                System.err.println("Using synthetic terrain instead of recorded fixtures, the numbers are not representative");
+                sets = synthetic();
+                chunks = new LinkedHashMap<>();
+                sets.values().forEach(chunks::putAll);
+            } else if (stream != null) {
+                chunks = read(stream);
+                sets = partition(chunks);
+            } else {
+                throw new IllegalStateException("No recorded fixtures at " + RESOURCE + ", record some with FixtureRecorder"
+                        + " (or run with -D" + SYNTHETIC_PROPERTY + "=true to use synthetic terrain)");
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read fixtures", e);
+        }
+        return chunks;
+    }
+
+    /**
+     * @param terrainSet the name of one of the {@link #TERRAIN_SETS}
+     * @return the fixtures around that set's location, in a stable order
+     */
+    public static synchronized Map<ChunkPos, CachedChunkData> load(String terrainSet) {
+        if (!TERRAIN_SETS.containsKey(terrainSet)) {
+            throw new IllegalArgumentException("Unknown terrain set " + terrainSet + ", expected one of " + TERRAIN_SETS.keySet());
+        }
+        load();
+        Map<ChunkPos, CachedChunkData> set = sets.get(terrainSet);
+        if (set.isEmpty()) {
+            throw new IllegalStateException("The fixtures have no chunks around the " + terrainSet + " location, record them again with FixtureRecorder");
+        }
+        return set;
+    }
+
+    /**
+     * @param location a latitude and longitude from {@link #TERRAIN_SETS}
+     * @return the chunk the location is in
+     */
+    static ChunkPos center(double[] location) {
+        GeographicProjection projection = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS).projection();
+        try {
+            double[] center = projection.fromGeo(location[1], location[0]);
+            return new ChunkPos((int) Math.floor(center[0]) >> 4, (int) Math.floor(center[1]) >> 4);
+        } catch (OutOfProjectionBoundsException e) {
+            throw new IllegalStateException("Location out of the projection bounds", e);
+        }
+    }
+
+    private static Map<String, double[]> terrainSets() {
+        // A mix of terrain: dense city, mountains, coast with water, farmland with roads and trees
+        Map<String, double[]> result = new LinkedHashMap<>();
+        result.put("city", new double[]{ 52.2297, 21.0122 }); // Warsaw
+        result.put("mountain", new double[]{ 49.2320, 19.9819 }); // Tatra mountains
+        result.put("coast", new double[]{ 54.3520, 18.6466 }); // Gdańsk harbour
+        result.put("farmland", new double[]{ 51.7592, 19.4560 }); // Łódź outskirts
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Map<String, Map<ChunkPos, CachedChunkData>> partition(Map<ChunkPos, CachedChunkData> fixtures) {
+        Map<String, Map<ChunkPos, CachedChunkData>> result = new LinkedHashMap<>();
+        TERRAIN_SETS.forEach((name, location) -> {
+            ChunkPos center = center(location);
+            Map<ChunkPos, CachedChunkData> set = new LinkedHashMap<>();
+            fixtures.forEach((pos, data) -> {
+                if (Math.abs(pos.x() - center.x()) <= RADIUS_CHUNKS && Math.abs(pos.z() - center.z()) <= RADIUS_CHUNKS) {
+                    set.put(pos, data);
+                }
+            });
+            result.put(name, set);
+        });
+        return result;
+    }
+
+    static Map<ChunkPos, CachedChunkData> read(InputStream stream) throws IOException {
+        Map<ChunkPos, CachedChunkData> result = new LinkedHashMap<>();
+        DataInputStream input = new DataInputStream(new GZIPInputStream(stream));
+        int count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            ChunkPos pos = new ChunkPos(input.readInt(), input.readInt());
+            byte[] record = new byte[input.readInt()];
+            input.readFully(record);
+            result.put(pos, ChunkDataCodec.decode(ByteBuffer.wrap(record)));
+        }
+        return result;
+    }
+
+    /**
+     * Deletes a temporary file or directory with its content, ignoring failures.
+     */
+    static void deleteRecursively(Path path) {
+        if (path == null || !Files.exists(path)) return;
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to delete " + path + ": " + e);
+        }
+    }
+
+    static void write(Map<ChunkPos, CachedChunkData> fixtures, OutputStream stream) throws IOException {
+        DataOutputStream output = new DataOutputStream(new GZIPOutputStream(stream));
+        output.writeInt(fixtures.size());
+        for (Map.Entry<ChunkPos, CachedChunkData> entry : fixtures.entrySet()) {
+            byte[] record = ChunkDataCodec.encode(entry.getValue());
+            output.writeInt(entry.getKey().x());
+            output.writeInt(entry.getKey().z());
+            output.writeInt(record.length);
+            output.write(record);
+        }
+        output.flush();
+        output.close();
+    }
+
+    /**
+     * Rolling hills with a lake, a road and varying tree cover for each terrain set, steep and high for the mountains,
+     * and about half under water for the coast.
+     */
+    private static Map<String, Map<ChunkPos, CachedChunkData>> synthetic() {
+        Random random = new Random(42);
+        BlockState road = TerraBukkit.fromBukkitBlockData(Bukkit.createBlockData(Material.GRAY_CONCRETE));
+        Map<String, Map<ChunkPos, CachedChunkData>> result = new LinkedHashMap<>();
+        int offset = 0;
+        for (String name : TERRAIN_SETS.keySet()) {
+            int base = switch (name) {
+                case "mountain" -> 900;
+                case "coast" -> 20;
+                default -> 40;
+            };
+            int amplitude = switch (name) {
+                case "mountain" -> 400;
+                case "coast" -> 8;
+                default -> 30;
+            };
+            result.put(name, synthetic(random, road, offset, base, amplitude));
+            offset += SYNTHETIC_SIZE;
+        }
+        return result;
+    }
+
+    private static Map<ChunkPos, CachedChunkData> synthetic(Random random, BlockState road, int offset, int base, int amplitude) {
+        Map<ChunkPos, CachedChunkData> result = new LinkedHashMap<>();
+        for (int chunkX = offset; chunkX < offset + SYNTHETIC_SIZE; chunkX++) {
+            for (int chunkZ = 0; chunkZ < SYNTHETIC_SIZE; chunkZ++) {
+                CachedChunkData.Builder builder = CachedChunkData.builder();
+                BlockState[] surfaceBlocks = builder.surfaceBlocks();
+                byte[] treeCover = new byte[ChunkDataCodec.COLUMNS];
+                random.nextBytes(treeCover);
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        int blockX = chunkX * 16 + x;
+                        int blockZ = chunkZ * 16 + z;
+                        int ground = (int) (base + amplitude * Math.sin(blockX / 23d) * Math.cos(blockZ / 31d));
+                        builder.surfaceHeight(x, z, ground);
+                        if (ground < 20) builder.updateWaterDepth(x, z, 20 - ground);
+                        if (blockZ % 48 < 3) surfaceBlocks[x * 16 + z] = road;
+                    }
+                }
+                builder.putCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, treeCover);
+                result.put(new ChunkPos(chunkX, chunkZ), builder.build());
+            }
+        }
+        return result;
+    }
+
+}
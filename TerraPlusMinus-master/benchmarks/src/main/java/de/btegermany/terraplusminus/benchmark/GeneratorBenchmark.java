@@ -0,0 +1,129 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.gen.ColumnWriters;
+import de.btegermany.terraplusminus.gen.RealWorldGenerator;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.HeightMap;
+import org.bukkit.generator.WorldInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per chunk work of {@link RealWorldGenerator}, with every chunk's data already cached.
+ * Each invocation generates the next fixture chunk of the {@link #terrainSet terrain set}, so results are averaged over its recorded terrain.
+ * {@code writeColumns} and {@code writeColumnsBaseline} compare the stone and water pass of {@code generateNoise}
+ * with the per column {@code setRegion} calls it replaced, see {@link ColumnWriters}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    private static final int HEIGHT_QUERIES = 1024;
+
+    @Param({ "mountain", "coast" })
+    public String terrainSet;
+
+    private RealWorldGenerator generator;
+    private WorldInfo worldInfo;
+    private Random random;
+    private Stubs.CountingChunkData chunkData;
+    private ChunkPos[] positions;
+    private CachedChunkData[] data;
+    private int[] queryX;
+    private int[] queryZ;
+    private int next;
+    private int nextQuery;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        this.generator = new RealWorldGenerator(0);
+        this.worldInfo = Stubs.worldInfo();
+        this.random = new Random(0);
+        this.chunkData = Stubs.chunkData();
+
+        Map<ChunkPos, CachedChunkData> fixtures = Fixtures.load(this.terrainSet);
+        fixtures.forEach(this.generator.getDataService()::put);
+        this.positions = fixtures.keySet().toArray(new ChunkPos[0]);
+        this.data = fixtures.values().toArray(new CachedChunkData[0]);
+
+        Random queries = new Random(1);
+        this.queryX = new int[HEIGHT_QUERIES];
+        this.queryZ = new int[HEIGHT_QUERIES];
+        for (int i = 0; i < HEIGHT_QUERIES; i++) {
+            ChunkPos pos = this.positions[queries.nextInt(this.positions.length)];
+            this.queryX[i] = pos.x() * 16 + queries.nextInt(16);
+            this.queryZ[i] = pos.z() * 16 + queries.nextInt(16);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.generator.close();
+    }
+
+    private ChunkPos nextChunk() {
+        ChunkPos pos = this.positions[this.next];
+        this.next = (this.next + 1) % this.positions.length;
+        return pos;
+    }
+
+    private CachedChunkData nextData() {
+        CachedChunkData data = this.data[this.next];
+        this.next = (this.next + 1) % this.data.length;
+        return data;
+    }
+
+    @Benchmark
+    public long generateNoise() {
+        ChunkPos pos = this.nextChunk();
+        this.generator.generateNoise(this.worldInfo, this.random, pos.x(), pos.z(), this.chunkData.chunkData);
+        return this.chunkData.writes;
+    }
+
+    @Benchmark
+    public long writeColumns() {
+        ColumnWriters.write(this.nextData(), this.generator.getYOffset(), Stubs.MIN_HEIGHT, Stubs.MAX_HEIGHT, this.chunkData.chunkData);
+        return this.chunkData.writes;
+    }
+
+    @Benchmark
+    public long writeColumnsBaseline() {
+        ColumnWriters.writePerColumn(this.nextData(), this.generator.getYOffset(), Stubs.MIN_HEIGHT, Stubs.MAX_HEIGHT, this.chunkData.chunkData);
+        return this.chunkData.writes;
+    }
+
+    @Benchmark
+    public long generateSurface() {
+        ChunkPos pos = this.nextChunk();
+        this.generator.generateSurface(this.worldInfo, this.random, pos.x(), pos.z(), this.chunkData.chunkData);
+        return this.chunkData.writes;
+    }
+
+    @Benchmark
+    public int getBaseHeight() {
+        int i = this.nextQuery;
+        this.nextQuery = (this.nextQuery + 1) % HEIGHT_QUERIES;
+        return this.generator.getBaseHeight(this.worldInfo, this.random, this.queryX[i], this.queryZ[i], HeightMap.WORLD_SURFACE_WG);
+    }
+
+}
@@ -0,0 +1,106 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.data.ProjectionGrid;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BTE projection conversions used by /tpll (geographic to Minecraft) and /where (Minecraft to geographic).
+ * <p>
+ * {@code toGeoLocal} and {@code toGeoGrid} compare the exact projection with the interpolating {@link ProjectionGrid}
+ * on points clustered like the ones of a generating area. The error of the grid against the exact projection is printed at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int POINTS = 1024;
+    private static final int LOCAL_AREA = 2048; // Blocks, around the first point
+
+    private GeographicProjection projection;
+    private final double[] longitudes = new double[POINTS];
+    private final double[] latitudes = new double[POINTS];
+    private final double[] blockX = new double[POINTS];
+    private final double[] blockZ = new double[POINTS];
+    private ProjectionGrid grid;
+    private final double[] localX = new double[POINTS];
+    private final double[] localZ = new double[POINTS];
+    private final double[] out = new double[2];
+    private int next;
+
+    @Setup
+    public void setUp() throws OutOfProjectionBoundsException {
+        this.projection = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS).projection();
+        Random random = new Random(0);
+        for (int i = 0; i < POINTS; i++) {
+            // Central Europe
+            this.longitudes[i] = 14 + random.nextDouble() * 10;
+            this.latitudes[i] = 49 + random.nextDouble() * 6;
+            double[] projected = this.projection.fromGeo(this.longitudes[i], this.latitudes[i]);
+            this.blockX[i] = projected[0];
+            this.blockZ[i] = projected[1];
+        }
+
+        this.grid = new ProjectionGrid(this.projection);
+        double maxError = 0.0;
+        for (int i = 0; i < POINTS; i++) {
+            this.localX[i] = this.blockX[0] + random.nextDouble() * LOCAL_AREA;
+            this.localZ[i] = this.blockZ[0] + random.nextDouble() * LOCAL_AREA;
+            double[] exact = this.projection.toGeo(this.localX[i], this.localZ[i]);
+            double[] interpolated = this.grid.toGeo(this.localX[i], this.localZ[i]);
+            maxError = Math.max(maxError, Math.max(Math.abs(exact[0] - interpolated[0]), Math.abs(exact[1] - interpolated[1])));
+        }
+        System.out.println("Grid error: " + maxError + " degrees at random points, " + this.grid.maxMeasuredError()
+                + " at checked points, " + this.grid.exactCellRatio() * 100 + " % exact cells");
+    }
+
+    private int nextPoint() {
+        int i = this.next;
+        this.next = (this.next + 1) % POINTS;
+        return i;
+    }
+
+    @Benchmark
+    public double[] fromGeo() throws OutOfProjectionBoundsException {
+        int i = this.nextPoint();
+        return this.projection.fromGeo(this.longitudes[i], this.latitudes[i]);
+    }
+
+    @Benchmark
+    public double[] toGeo() throws OutOfProjectionBoundsException {
+        int i = this.nextPoint();
+        return this.projection.toGeo(this.blockX[i], this.blockZ[i]);
+    }
+
+    @Benchmark
+    public double[] toGeoLocal() throws OutOfProjectionBoundsException {
+        int i = this.nextPoint();
+        return this.projection.toGeo(this.localX[i], this.localZ[i]);
+    }
+
+    @Benchmark
+    public double[] toGeoGrid() {
+        int i = this.nextPoint();
+        this.grid.toGeo(this.localX[i], this.localZ[i], this.out);
+        return this.out;
+    }
+
+}
@@ -0,0 +1,103 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.generator.ChunkGenerator.ChunkData;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+/**
+ * Minimal implementations of the server interfaces the generator writes to.
+ * <p>
+ * They are dynamic proxies so they keep working when Paper adds methods to the interfaces.
+ * Each call allocates its argument array, which shows up in the allocation profile as a constant per call overhead;
+ * compare allocation rates between runs rather than reading them as absolute numbers.
+ * Writes are counted so the JIT cannot discard them.
+ */
+public final class Stubs {
+
+    public static final int MIN_HEIGHT = -64;
+    public static final int MAX_HEIGHT = 2032;
+
+    private Stubs() {
+        throw new IllegalStateException();
+    }
+
+    public static WorldInfo worldInfo() {
+        UUID uuid = new UUID(0, 0);
+        return proxy(WorldInfo.class, (method, args) -> switch (method.getName()) {
+            case "getName" -> "benchmark";
+            case "getUID" -> uuid;
+            case "getSeed" -> 0L;
+            case "getEnvironment" -> World.Environment.NORMAL;
+            case "getMinHeight" -> MIN_HEIGHT;
+            case "getMaxHeight" -> MAX_HEIGHT;
+            default -> null;
+        });
+    }
+
+    public static CountingChunkData chunkData() {
+        return new CountingChunkData();
+    }
+
+    public static CountingLimitedRegion limitedRegion() {
+        return new CountingLimitedRegion();
+    }
+
+    public static final class CountingChunkData {
+
+        public long writes;
+        public final ChunkData chunkData = proxy(ChunkData.class, (method, args) -> switch (method.getName()) {
+            case "getMinHeight" -> MIN_HEIGHT;
+            case "getMaxHeight" -> MAX_HEIGHT;
+            case "getBiome" -> Biome.PLAINS;
+            case "setBlock", "setRegion" -> {
+                this.writes++;
+                yield null;
+            }
+            default -> null;
+        });
+
+    }
+
+    public static final class CountingLimitedRegion {
+
+        public long writes;
+        public final LimitedRegion region = proxy(LimitedRegion.class, (method, args) -> {
+            if (method.getName().equals("setType") || method.getName().equals("setBlockData")) {
+                this.writes++;
+            }
+            return null;
+        });
+
+    }
+
+    private interface Handler {
+        Object handle(Method method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Object result = handler.handle(method, args);
+            return result != null ? result : defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        if (type == char.class) return (char) 0;
+        return null;
+    }
+
+}
@@ -0,0 +1,82 @@
+package de.btegermany.terraplusminus.benchmark;
+
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.gen.CustomBiomeProvider;
+import de.btegermany.terraplusminus.gen.tree.TreePopulator;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.generator.WorldInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Placing custom trees: a single tree, picked from the oak and birch table of a temperate climate,
+ * and the planned trees of fixture chunks, as {@link TreePopulator} does when populating a chunk.
+ * The plans are made during setup, like the generator does when it loads the terrain data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+
+    private static final int TEMPERATE_CLIMATE = 8;
+
+    private TerrainDataService dataService;
+    private TreePopulator populator;
+    private Stubs.CountingLimitedRegion region;
+    private Random random;
+    private WorldInfo worldInfo;
+    private ChunkPos[] positions;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        this.dataService = TerrainDataService.acquireDefault();
+        this.populator = new TreePopulator(new CustomBiomeProvider(this.dataService.getProjectionGrid()), this.dataService, 0);
+        this.region = Stubs.limitedRegion();
+        this.random = new Random(0);
+        this.worldInfo = Stubs.worldInfo();
+
+        Map<ChunkPos, CachedChunkData> fixtures = Fixtures.load();
+        fixtures.forEach(this.dataService::put);
+        fixtures.forEach((pos, data) -> this.populator.planTrees(this.worldInfo, pos, data));
+        this.positions = fixtures.keySet().toArray(new ChunkPos[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.dataService.release();
+    }
+
+    @Benchmark
+    public long placeTree() {
+        this.populator.placeTree(this.region.region, 8, 64, 8, TEMPERATE_CLIMATE, this.random);
+        return this.region.writes;
+    }
+
+    @Benchmark
+    public long populate() {
+        ChunkPos pos = this.positions[this.next];
+        this.next = (this.next + 1) % this.positions.length;
+        this.populator.populate(this.worldInfo, this.random, pos.x(), pos.z(), this.region.region);
+        return this.region.writes;
+    }
+
+}
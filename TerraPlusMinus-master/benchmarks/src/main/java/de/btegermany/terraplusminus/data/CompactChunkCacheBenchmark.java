@@ -0,0 +1,75 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.benchmark.BenchmarkEnvironment;
+import de.btegermany.terraplusminus.benchmark.Fixtures;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storing and loading fixture chunks in the {@link CompactChunkCache}.
+ * The average encoded size, which decides how many chunks fit in the budget, is printed during setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompactChunkCacheBenchmark {
+
+    private CompactChunkCache cache;
+    private ChunkPos[] positions;
+    private CachedChunkData[] chunks;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        this.cache = new CompactChunkCache(64L << 20);
+        Map<ChunkPos, CachedChunkData> fixtures = Fixtures.load();
+        this.positions = fixtures.keySet().toArray(new ChunkPos[0]);
+        this.chunks = fixtures.values().toArray(new CachedChunkData[0]);
+        for (int i = 0; i < this.positions.length; i++) {
+            this.cache.put(this.positions[i].x(), this.positions[i].z(), this.chunks[i]);
+        }
+        System.out.println("Average compact record: " + this.cache.usedBytes() / this.cache.size() + " bytes");
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.cache.clear();
+    }
+
+    private int nextIndex() {
+        int i = this.next;
+        this.next = (this.next + 1) % this.positions.length;
+        return i;
+    }
+
+    @Benchmark
+    public void put() {
+        int i = this.nextIndex();
+        this.cache.put(this.positions[i].x(), this.positions[i].z(), this.chunks[i]);
+    }
+
+    @Benchmark
+    public CachedChunkData get() {
+        int i = this.nextIndex();
+        return this.cache.get(this.positions[i].x(), this.positions[i].z());
+    }
+
+}
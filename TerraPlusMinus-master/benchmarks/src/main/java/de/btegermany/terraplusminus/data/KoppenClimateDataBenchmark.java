@@ -0,0 +1,61 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.benchmark.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Raw lookups in the Koppen climate map, from the memory mapped tiles or from the map decoded in memory.
+ * It lives in the same package as {@link KoppenClimateData} to reach its protected accessor.
+ * The first run converts the map to tiles in the benchmark server's plugin directory, which takes a while.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KoppenClimateDataBenchmark {
+
+    private static final int POINTS = 4096;
+
+    @Param({"tiled", "rle"})
+    public String source;
+
+    private KoppenClimateData data;
+    private final double[] xs = new double[POINTS];
+    private final double[] ys = new double[POINTS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+        this.data = new KoppenClimateData(this.source.equals("tiled"));
+        Random random = new Random(0);
+        for (int i = 0; i < POINTS; i++) {
+            // Land heavy band of the map, where the RLE runs are shortest
+            this.xs[i] = random.nextDouble() * KoppenClimateData.COLUMNS;
+            this.ys[i] = KoppenClimateData.ROWS * (0.15 + random.nextDouble() * 0.35);
+        }
+    }
+
+    @Benchmark
+    public double get() {
+        int i = this.next;
+        this.next = (this.next + 1) % POINTS;
+        return this.data.get(this.xs[i], this.ys[i]);
+    }
+
+}
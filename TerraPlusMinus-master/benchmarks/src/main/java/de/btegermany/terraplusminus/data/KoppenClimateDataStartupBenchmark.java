@@ -0,0 +1,43 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.benchmark.BenchmarkEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time until the Koppen climate map can be queried, in a fresh JVM: opening the memory mapped tiles,
+ * or decoding the bundled resource into memory. The tiles must already have been converted, see {@link KoppenClimateDataBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(3)
+public class KoppenClimateDataStartupBenchmark {
+
+    @Param({"tiled", "rle"})
+    public String source;
+
+    @Setup
+    public void setUp() {
+        BenchmarkEnvironment.setUp();
+    }
+
+    @Benchmark
+    public double load() {
+        return new KoppenClimateData(this.source.equals("tiled")).get(KoppenClimateData.COLUMNS / 2.0d, KoppenClimateData.ROWS / 3.0d);
+    }
+
+}
@@ -0,0 +1,74 @@
+package de.btegermany.terraplusminus.gen;
+
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import org.bukkit.generator.ChunkGenerator.ChunkData;
+
+import static java.lang.Math.min;
+import static net.buildtheearth.terraminusminus.substitutes.ChunkPos.blockToCube;
+import static net.buildtheearth.terraminusminus.substitutes.ChunkPos.cubeToMinBlock;
+import static org.bukkit.Material.STONE;
+import static org.bukkit.Material.WATER;
+
+/**
+ * The stone and water pass of {@link RealWorldGenerator#generateNoise}, through the {@link ColumnWriter} it uses
+ * and through the per column {@code setRegion} calls it used before, so the two can be compared on the same data.
+ * Neither looks up data nor plans trees, unlike the generator.
+ */
+public final class ColumnWriters {
+
+    private ColumnWriters() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Writes a chunk the way the generator does.
+     */
+    public static void write(CachedChunkData data, int yOffset, int minY, int maxY, ChunkData chunkData) {
+        int minSurfaceCubeY = minSurfaceCube(data, yOffset, minY, maxY);
+        if (minSurfaceCubeY == Integer.MIN_VALUE) return;
+        if (minSurfaceCubeY >= blockToCube(maxY - yOffset)) {
+            chunkData.setRegion(0, minY, 0, 16, maxY, 16, STONE);
+        } else {
+            ColumnWriter.get().write(data, yOffset, minY, maxY, chunkData);
+        }
+    }
+
+    /**
+     * Writes a chunk the way the generator did before {@link ColumnWriter}, with up to two calls per column.
+     */
+    public static void writePerColumn(CachedChunkData data, int yOffset, int minY, int maxY, ChunkData chunkData) {
+        int minSurfaceCubeY = minSurfaceCube(data, yOffset, minY, maxY);
+        if (minSurfaceCubeY == Integer.MIN_VALUE) return;
+        if (minSurfaceCubeY >= blockToCube(maxY - yOffset)) {
+            chunkData.setRegion(0, minY, 0, 16, maxY, 16, STONE);
+            return;
+        }
+        chunkData.setRegion(0, minY, 0, 16, cubeToMinBlock(minSurfaceCubeY), 16, STONE);
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int groundHeight = min(data.groundHeight(x, z) + yOffset, maxY - 1);
+                int waterHeight = min(data.waterHeight(x, z) + yOffset, maxY - 1);
+                if (groundHeight >= minY) {
+                    chunkData.setRegion(x, minY, z, x + 1, groundHeight + 1, z + 1, STONE);
+                }
+                if (waterHeight > groundHeight) {
+                    chunkData.setRegion(x, groundHeight + 1, z, x + 1, waterHeight + 1, z + 1, WATER);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the lowest cube that is not entirely below the surface, or {@link Integer#MIN_VALUE} if the chunk is entirely above it
+     */
+    private static int minSurfaceCube(CachedChunkData data, int yOffset, int minY, int maxY) {
+        int minSurfaceCubeY = blockToCube(minY - yOffset);
+        int maxWorldCubeY = blockToCube(maxY - yOffset);
+        if (data.aboveSurface(minSurfaceCubeY)) return Integer.MIN_VALUE;
+        while (minSurfaceCubeY < maxWorldCubeY && data.belowSurface(minSurfaceCubeY)) {
+            minSurfaceCubeY++;
+        }
+        return minSurfaceCubeY;
+    }
+
+}
@@ -3,12 +3,23 @@ package de.btegermany.terraplusminus;
 
 import de.btegermany.terraplusminus.commands.OffsetCommand;
 import de.btegermany.terraplusminus.commands.TpllCommand;
+import de.btegermany.terraplusminus.commands.TplusCommand;
 import de.btegermany.terraplusminus.commands.WhereCommand;
+import de.btegermany.terraplusminus.data.ChunkDataStore;
+import de.btegermany.terraplusminus.data.HttpTransport;
+import de.btegermany.terraplusminus.data.UpstreamGateway;
+import de.btegermany.terraplusminus.events.ActionBarDispatcher;
 import de.btegermany.terraplusminus.events.PlayerJoinEvent;
-import de.btegermany.terraplusminus.events.PlayerMoveEvent;
+import de.btegermany.terraplusminus.events.LinkedWorldSweeper;
 import de.btegermany.terraplusminus.events.PluginMessageEvent;
+import de.btegermany.terraplusminus.fixtures.FixtureServer;
+import de.btegermany.terraplusminus.gen.ChunkRepairQueue;
 import de.btegermany.terraplusminus.gen.PlayerMoveListener;
 import de.btegermany.terraplusminus.gen.RealWorldGenerator;
+import de.btegermany.terraplusminus.gen.TerrainPrefetcher;
+import de.btegermany.terraplusminus.gen.pregen.PregenTask;
+import de.btegermany.terraplusminus.metrics.BStatsCharts;
+import de.btegermany.terraplusminus.metrics.OpenMetricsEndpoint;
 import de.btegermany.terraplusminus.utils.ConfigurationHelper;
 import de.btegermany.terraplusminus.utils.PluginConfigManipulator;
 import de.btegermany.terraplusminus.utils.LinkedWorld;
@@ -29,8 +40,10 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.serialization.ConfigurationSerializable;
 import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.WorldInitEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.generator.ChunkGenerator;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
@@ -52,17 +65,12 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
     @Override
     public void onEnable() {
         LOGGER = this.getLogger();
-        System.setProperty("http.maxConnections", "2");
-        System.setProperty("http.keepAlive", "true");
-        System.setProperty("sun.net.http.allowRestrictedHeaders", "true");
-
-        net.buildtheearth.terraminusminus.util.http.Http.configChanged();
 
         java.util.logging.Logger terraLogger = java.util.logging.Logger.getLogger("terra--");
         terraLogger.setLevel(java.util.logging.Level.OFF);
 
         java.util.logging.Logger.getLogger("io.netty").setLevel(java.util.logging.Level.OFF);
-        new Metrics(this, 28392); // https://bstats.org/plugin/bukkit/Terraplusminus/28392
+        Metrics metrics = new Metrics(this, 28392); // https://bstats.org/plugin/bukkit/Terraplusminus/28392
         instance = this;
 
         // Config ------------------]
@@ -77,6 +85,7 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
         this.extractTerraConfigFileToPluginDir("/net/buildtheearth/terraminusminus/dataset/osm/osm.json5", "osm.json5");
         this.extractTerraConfigFileToPluginDir("config/readme-heights.md", "heights/README.md");
         this.extractTerraConfigFileToPluginDir("config/readme-tree_cover.md", "tree_cover/README.md");
+        this.setupUpstreams();
 
         // Register plugin messaging channel
         PlayerHashMapManagement playerHashMapManagement = new PlayerHashMapManagement();
@@ -86,19 +95,30 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
 
 
         // Registering events
+        ChunkRepairQueue.start(this);
         getServer().getPluginManager().registerEvents(new PlayerMoveListener(), this);
+        if (Terraplusminus.config.getBoolean("prefetch.enabled", true)) {
+            TerrainPrefetcher prefetcher = new TerrainPrefetcher(this);
+            getServer().getPluginManager().registerEvents(prefetcher, this);
+            prefetcher.start();
+        }
         Bukkit.getPluginManager().registerEvents(this, this);
         if (Terraplusminus.config.getBoolean("height_in_actionbar")) {
-            Bukkit.getPluginManager().registerEvents(new PlayerMoveEvent(this), this);
+            ActionBarDispatcher.fromConfig().start(this);
         }
         if (Terraplusminus.config.getBoolean("linked_worlds.enabled")) {
             Bukkit.getPluginManager().registerEvents(new PlayerJoinEvent(playerHashMapManagement), this);
+            if ("MULTIVERSE".equalsIgnoreCase(Terraplusminus.config.getString("linked_worlds.method"))) {
+                new LinkedWorldSweeper().start(this);
+            }
         }
         // --------------------------
 
         TerraConfig.reducedConsoleMessages = Terraplusminus.config.getBoolean("reduced_console_messages"); // Disables console log of fetching data
 
         registerCommands();
+        BStatsCharts.register(metrics);
+        OpenMetricsEndpoint.start();
 
         this.getComponentLogger().info(
                 "Terraplusminus successfully enabled ({} v{}, {} v{})",
@@ -113,6 +133,14 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
         this.getServer().getMessenger().unregisterIncomingPluginChannel(this);
         // --------------------------
 
+        // Stop what fetches and writes chunks first, then make sure everything that was fetched is on disk for the next start
+        PregenTask.stopAll();
+        ChunkRepairQueue.stop();
+        ChunkDataStore.closeAll();
+        OpenMetricsEndpoint.stop();
+        UpstreamGateway.stop();
+        FixtureServer.stop();
+
         this.getComponentLogger().info("Plugin deactivated");
     }
 
@@ -128,6 +156,12 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
         }
     }
 
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        if (event.getWorld().getGenerator() instanceof RealWorldGenerator generator) {
+            generator.close();
+        }
+    }
 
     @Override
     public ChunkGenerator getDefaultWorldGenerator(@NotNull String worldName, String id) {
@@ -308,6 +342,7 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
             commands.register("tpll", "Teleports you to longitude and latitude", List.of("tpc"), new TpllCommand());
             commands.register("where", "Gives you the longitude and latitude of your minecraft coordinates", new WhereCommand());
             commands.register("offset", "Displays the x,y and z offset of your world", new OffsetCommand());
+            commands.register("tplus", "Administration of Terraplusminus", new TplusCommand());
         });
     }
 
@@ -321,6 +356,25 @@ public final class Terraplusminus extends JavaPlugin implements Listener {
         Http.userAgent(userAgent);
     }
 
+    private void setupUpstreams() {
+        Path configRoot = this.getDataPath();
+        Path fixturesConfigRoot = FixtureServer.start(configRoot);
+        if (fixturesConfigRoot != null) {
+            // Tiles cached by previous runs would never reach the fixture server
+            Disk.setConfigRoot(fixturesConfigRoot.toFile());
+            Disk.setCacheRoot(fixturesConfigRoot.resolve("cache").toFile());
+            configRoot = fixturesConfigRoot;
+        }
+        Path gatewayConfigRoot = UpstreamGateway.start(configRoot);
+        if (gatewayConfigRoot != null) {
+            Disk.setConfigRoot(gatewayConfigRoot.toFile());
+        }
+        HttpTransport.configure(); // Once the URLs it limits are routed
+        if (fixturesConfigRoot == null) {
+            HttpTransport.warmUp(); // Only the real APIs are worth it, and replaying must not touch the network
+        }
+    }
+
     // The old way is deprecated and the new one is experimental, let's go with the new one
     private String getVersion() {
         PluginMeta meta = this.getPluginMeta();
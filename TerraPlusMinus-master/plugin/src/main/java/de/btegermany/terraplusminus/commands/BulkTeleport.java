@@ -0,0 +1,148 @@
+package de.btegermany.terraplusminus.commands;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.gen.RealWorldGenerator;
+import io.papermc.lib.PaperLib;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Teleports a group of players to the same place, for {@code /tpll @a} and the other selectors.
+ * <p>
+ * The players are spread on a spiral around the target so they do not stack up. The terrain data of every chunk of the spiral
+ * is requested first and the chunks are generated, then the players are teleported a few per tick
+ * onto the surface of their spot, so the main thread does not have to load and generate everything at once.
+ */
+final class BulkTeleport {
+
+    private static final double SPACING = 1.5; // Blocks between neighbouring players
+    private static final double GOLDEN_ANGLE = Math.PI * (3 - Math.sqrt(5));
+    private static final int TELEPORTS_PER_TICK = 5;
+
+    private final World world;
+    private final List<Player> players;
+    private final double[] xs;
+    private final double[] zs;
+    @Nullable private final Double height;
+    private final double[] geoCoordinates;
+    private final Set<Long> chunks = new LinkedHashSet<>();
+    private final List<CompletableFuture<Boolean>> teleports = new ArrayList<>();
+    private int next;
+
+    private BulkTeleport(World world, List<Player> players, double centerX, double centerZ, @Nullable Double height, double[] geoCoordinates) {
+        this.world = world;
+        this.players = List.copyOf(players);
+        this.height = height;
+        this.geoCoordinates = geoCoordinates;
+        this.xs = new double[this.players.size()];
+        this.zs = new double[this.players.size()];
+        for (int i = 0; i < this.xs.length; i++) {
+            double radius = SPACING * Math.sqrt(i);
+            this.xs[i] = centerX + radius * Math.cos(i * GOLDEN_ANGLE);
+            this.zs[i] = centerZ + radius * Math.sin(i * GOLDEN_ANGLE);
+            this.chunks.add(chunkKey((int) Math.floor(this.xs[i]) >> 4, (int) Math.floor(this.zs[i]) >> 4));
+        }
+    }
+
+    /**
+     * Starts teleporting players to a place. Must be called from the main thread.
+     *
+     * @param world          the world to teleport to, which must use {@link RealWorldGenerator}
+     * @param players        the players to teleport
+     * @param centerX        the x coordinate of the target
+     * @param centerZ        the z coordinate of the target
+     * @param height         the y coordinate to teleport to, or null to put each player on the surface of their spot
+     * @param geoCoordinates the target as longitude and latitude, for the messages
+     */
+    static void start(@NotNull World world, @NotNull List<Player> players, double centerX, double centerZ, @Nullable Double height, double @NotNull [] geoCoordinates) {
+        new BulkTeleport(world, players, centerX, centerZ, height, geoCoordinates).prepare();
+    }
+
+    /**
+     * Fetches the terrain data of the chunks, then generates them, and only then starts teleporting.
+     */
+    private void prepare() {
+        TerrainDataService dataService = ((RealWorldGenerator) this.world.getGenerator()).getDataService();
+        List<CompletableFuture<CachedChunkData>> data = new ArrayList<>();
+        for (long key : this.chunks) {
+            CompletableFuture<CachedChunkData> future = dataService.request(new ChunkPos(chunkX(key), chunkZ(key)), 0);
+            // Without request budget the chunk is generated as a placeholder and repaired later, like any other
+            if (future != null) data.add(future);
+        }
+        CompletableFuture.allOf(data.toArray(new CompletableFuture[0])).whenComplete((ignored, error) ->
+                Bukkit.getScheduler().runTask(Terraplusminus.instance, this::generate));
+    }
+
+    private void generate() {
+        List<CompletableFuture<Chunk>> generated = new ArrayList<>();
+        for (long key : this.chunks) {
+            this.world.addPluginChunkTicket(chunkX(key), chunkZ(key), Terraplusminus.instance);
+            generated.add(this.world.getChunkAtAsync(chunkX(key), chunkZ(key), true));
+        }
+        CompletableFuture.allOf(generated.toArray(new CompletableFuture[0])).whenComplete((ignored, error) ->
+                Bukkit.getScheduler().runTaskTimer(Terraplusminus.instance, task -> {
+                    if (!this.teleportNext()) {
+                        task.cancel();
+                        // The chunks must stay loaded until the players are actually in them
+                        CompletableFuture.allOf(this.teleports.toArray(new CompletableFuture[0])).whenComplete((done, failure) ->
+                                Bukkit.getScheduler().runTask(Terraplusminus.instance, this::releaseChunks));
+                    }
+                }, 1L, 1L));
+    }
+
+    /**
+     * @return whether there are players left to teleport
+     */
+    private boolean teleportNext() {
+        for (int i = 0; i < TELEPORTS_PER_TICK && this.next < this.players.size(); i++, this.next++) {
+            Player player = this.players.get(this.next);
+            if (!player.isOnline()) continue;
+            double x = this.xs[this.next];
+            double z = this.zs[this.next];
+            double y = this.height != null ? this.height : this.world.getHighestBlockYAt((int) Math.floor(x), (int) Math.floor(z)) + 1.0;
+            Location location = new Location(this.world, x, y, z, player.getLocation().getYaw(), player.getLocation().getPitch());
+            CompletableFuture<Boolean> teleport = PaperLib.teleportAsync(player, location);
+            this.teleports.add(teleport);
+            teleport.thenAccept(success -> {
+                if (success) {
+                    player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Teleported to " + this.geoCoordinates[1] + ", " + this.geoCoordinates[0]);
+                }
+            });
+        }
+        return this.next < this.players.size();
+    }
+
+    private void releaseChunks() {
+        // The players now hold the chunks they are in, the others can go
+        for (long key : this.chunks) {
+            this.world.removePluginChunkTicket(chunkX(key), chunkZ(key), Terraplusminus.instance);
+        }
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    private static int chunkX(long key) {
+        return (int) (key >> 32);
+    }
+
+    private static int chunkZ(long key) {
+        return (int) key;
+    }
+
+}
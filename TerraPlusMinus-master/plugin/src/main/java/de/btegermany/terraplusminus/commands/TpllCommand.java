@@ -3,7 +3,6 @@ package de.btegermany.terraplusminus.commands;
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
 import de.btegermany.terraplusminus.Terraplusminus;
-import de.btegermany.terraplusminus.data.TerraConnector;
 import de.btegermany.terraplusminus.gen.RealWorldGenerator;
 import de.btegermany.terraplusminus.utils.ConfigurationHelper;
 import de.btegermany.terraplusminus.utils.LinkedWorld;
@@ -20,7 +19,12 @@ import org.bukkit.entity.Player;
 import org.bukkit.generator.ChunkGenerator;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.bukkit.ChatColor.RED;
 
@@ -89,17 +93,9 @@ public class TpllCommand implements BasicCommand {
             return;
         }
 
-        if (!player.hasPermission("t+-.admin")) {
-            double minLat = Terraplusminus.config.getDouble("min_latitude");
-            double maxLat = Terraplusminus.config.getDouble("max_latitude");
-            double minLon = Terraplusminus.config.getDouble("min_longitude");
-            double maxLon = Terraplusminus.config.getDouble("max_longitude");
-            if (minLat != 0 && maxLat != 0 && minLon != 0 && maxLon != 0) {
-                if (coordinates[1] < minLat || coordinates[0] < minLon || coordinates[1] > maxLat || coordinates[0] > maxLon) {
-                    player.sendMessage(Terraplusminus.config.getString("prefix") + RED + "Area restricted!");
-                    return;
-                }
-            }
+        if (isAreaRestricted(player, coordinates)) {
+            player.sendMessage(Terraplusminus.config.getString("prefix") + RED + "Area restricted!");
+            return;
         }
 
         int xOffset = Terraplusminus.config.getInt("terrain_offset.x");
@@ -109,34 +105,29 @@ public class TpllCommand implements BasicCommand {
 
         if (args.length >= 3) {
             double height = Double.parseDouble(args[2]) + yOffset;
-            finalizeTeleport(player, tpWorld, mcCoordinates, height, xOffset, zOffset, coordinates, true);
+            finalizeTeleport(player, tpWorld, mcCoordinates, height, xOffset, zOffset, coordinates, false);
         } else {
-            player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Locating position...");
-
-            tpWorld.getChunkAtAsync((int) targetX >> 4, (int) targetZ >> 4).thenAccept(chunk -> {
-                int internalHeight = tpWorld.getHighestBlockYAt((int) targetX, (int) targetZ);
-
-                if (internalHeight > tpWorld.getMinHeight() + 1) {
-                    finalizeTeleport(player, tpWorld, mcCoordinates, internalHeight + 1.0, xOffset, zOffset, coordinates, true);
-                } else {
-                    player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Fetching elevation from API...");
-                    TerraConnector terraConnector = new TerraConnector();
-                    terraConnector.getHeight((int) mcCoordinates[0], (int) mcCoordinates[1])
-                            .thenAcceptAsync(rawHeight -> {
-                                double finalHeight = rawHeight + yOffset;
-                                Bukkit.getScheduler().runTask(Terraplusminus.instance, () -> {
-                                    finalizeTeleport(player, tpWorld, mcCoordinates, finalHeight, xOffset, zOffset, coordinates, false);
-                                });
-                            }).exceptionally(ex -> {
-                                player.sendMessage(RED + "Error while fetching elevation from API!");
-                                return null;
-                            });
+            // Cached heights answer right away, without loading the chunk. Otherwise the elevation dataset is sampled
+            CompletableFuture<Double> height = terraGenerator.getDataService().getElevations().standingHeight(targetX, targetZ, yOffset);
+            if (height.isDone() && !height.isCompletedExceptionally()) {
+                finalizeTeleport(player, tpWorld, mcCoordinates, height.join(), xOffset, zOffset, coordinates, true);
+                return;
+            }
+            player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Fetching elevation...");
+            height.whenComplete((finalHeight, error) -> Bukkit.getScheduler().runTask(Terraplusminus.instance, () -> {
+                if (error != null) {
+                    player.sendMessage(Terraplusminus.config.getString("prefix") + RED + "Error while fetching elevation!");
+                    return;
                 }
-            });
+                finalizeTeleport(player, tpWorld, mcCoordinates, finalHeight, xOffset, zOffset, coordinates, true);
+            }));
         }
     }
 
-    private void finalizeTeleport(Player player, World tpWorld, double[] mcCoordinates, double height, int xOffset, int zOffset, double[] geoCoordinates, boolean hasCustomHeight) {
+    /**
+     * @param onSurface whether the height is the surface's, in which case the player is lifted onto the terrain once it is generated
+     */
+    private void finalizeTeleport(Player player, World tpWorld, double[] mcCoordinates, double height, int xOffset, int zOffset, double[] geoCoordinates, boolean onSurface) {
 
         if (height > tpWorld.getMaxHeight()) {
             handleLinkedWorlds(player, true, geoCoordinates, height, mcCoordinates, xOffset, zOffset);
@@ -150,6 +141,14 @@ public class TpllCommand implements BasicCommand {
 
         PaperLib.teleportAsync(player, location).thenAccept(success -> {
             if (success) {
+                if (onSurface) {
+                    // The chunk is generated now. Sampled elevations can be a block off, or below a building
+                    int surface = tpWorld.getHighestBlockYAt(location.getBlockX(), location.getBlockZ()) + 1;
+                    if (surface > location.getY() && surface < tpWorld.getMaxHeight()) {
+                        location.setY(surface);
+                        player.teleport(location);
+                    }
+                }
                 player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Teleported to " + geoCoordinates[1] + ", " + geoCoordinates[0]);
             }
         });
@@ -178,25 +177,131 @@ public class TpllCommand implements BasicCommand {
     }
 
     private void handleEntitySelectors(Player player, String[] args) {
+        List<Player> targets = new ArrayList<>();
         if (args[0].equals("@a")) {
-            Terraplusminus.instance.getServer().getOnlinePlayers().forEach(p -> p.chat("/tpll " + String.join(" ", args).substring(3)));
-            player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Teleporting all players...");
+            targets.addAll(Bukkit.getOnlinePlayers());
         } else if (args[0].equals("@p")) {
             Player nearest = null;
             double dist = Double.MAX_VALUE;
-            for (Player p : Bukkit.getOnlinePlayers()) {
+            for (Player p : player.getWorld().getPlayers()) {
                 if (!p.equals(player) && p.getLocation().distanceSquared(player.getLocation()) < dist) {
                     nearest = p;
                     dist = p.getLocation().distanceSquared(player.getLocation());
                 }
             }
-            if (nearest != null) nearest.chat("/tpll " + String.join(" ", args).substring(3));
+            if (nearest != null) targets.add(nearest);
         } else {
             Player target = Bukkit.getPlayer(args[0]);
-            if (target != null) {
-                target.chat("/tpll " + String.join(" ", args).replace(target.getName(), ""));
+            if (target != null) targets.add(target);
+        }
+        if (targets.isEmpty()) {
+            player.sendMessage(Terraplusminus.config.getString("prefix") + RED + "No player found!");
+            return;
+        }
+
+        String[] tpllArgs = Arrays.copyOfRange(args, 1, args.length);
+        String passthroughTpll = Terraplusminus.config.getString("passthrough_tpll");
+        if (passthroughTpll != null && !passthroughTpll.isEmpty()) {
+            targets.forEach(target -> target.chat("/" + passthroughTpll + ":tpll " + String.join(" ", tpllArgs)));
+            return;
+        }
+
+        if (tpllArgs.length < 2) {
+            player.sendMessage(RED + "Proper usage: /tpll <selector> <latitude> <longitude> [height (optional)]");
+            return;
+        }
+        double[] coordinates = new double[2];
+        try {
+            coordinates[1] = Double.parseDouble(tpllArgs[0].replace(",", "").replace("°", ""));
+            coordinates[0] = Double.parseDouble(tpllArgs[1].replace("°", ""));
+        } catch (NumberFormatException e) {
+            player.sendMessage(RED + "Invalid coordinates!");
+            return;
+        }
+        Double height = null;
+        if (tpllArgs.length >= 3) {
+            try {
+                height = Double.parseDouble(tpllArgs[2]);
+            } catch (NumberFormatException e) {
+                player.sendMessage(RED + "Invalid height!");
+                return;
             }
         }
+        if (isAreaRestricted(player, coordinates)) {
+            player.sendMessage(Terraplusminus.config.getString("prefix") + RED + "Area restricted!");
+            return;
+        }
+
+        // Players stay in their world, the target is resolved once per world
+        Map<World, List<Player>> targetsByWorld = new LinkedHashMap<>();
+        for (Player target : targets) {
+            targetsByWorld.computeIfAbsent(target.getWorld(), world -> new ArrayList<>()).add(target);
+        }
+        player.sendMessage(Terraplusminus.config.getString("prefix") + "§7Teleporting " + targets.size() + " players...");
+        for (Map.Entry<World, List<Player>> group : targetsByWorld.entrySet()) {
+            this.teleportWorldGroup(player, group.getKey(), group.getValue(), tpllArgs, coordinates, height);
+        }
+    }
+
+    /**
+     * Teleports the targets that are in the same world.
+     *
+     * @param height the height given in the command, without the world's offset, or null to use the terrain's
+     */
+    private void teleportWorldGroup(Player issuer, World tpWorld, List<Player> targets, String[] tpllArgs, double[] coordinates, Double height) {
+        if (!(tpWorld.getGenerator() instanceof RealWorldGenerator terraGenerator)) {
+            issuer.sendMessage(Terraplusminus.config.getString("prefix") + RED + "The world generator of " + tpWorld.getName() + " must be set to Terraplusminus");
+            return;
+        }
+        double[] mcCoordinates;
+        try {
+            mcCoordinates = terraGenerator.getSettings().projection().fromGeo(coordinates[0], coordinates[1]);
+        } catch (OutOfProjectionBoundsException e) {
+            issuer.sendMessage(RED + "Location is not within projection bounds");
+            return;
+        }
+        double targetX = mcCoordinates[0] + Terraplusminus.config.getInt("terrain_offset.x");
+        double targetZ = mcCoordinates[1] + Terraplusminus.config.getInt("terrain_offset.z");
+        int yOffset = terraGenerator.getYOffset();
+
+        if (height != null) {
+            double offsetHeight = height + yOffset;
+            this.teleportGroup(targets, tpllArgs, tpWorld, targetX, targetZ, offsetHeight, offsetHeight, coordinates);
+            return;
+        }
+        terraGenerator.getDataService().getElevations().standingHeight(targetX, targetZ, yOffset).whenComplete((surface, error) ->
+                Bukkit.getScheduler().runTask(Terraplusminus.instance, () -> {
+                    if (error != null) {
+                        issuer.sendMessage(Terraplusminus.config.getString("prefix") + RED + "Error while fetching elevation!");
+                        return;
+                    }
+                    this.teleportGroup(targets, tpllArgs, tpWorld, targetX, targetZ, null, surface, coordinates);
+                }));
+    }
+
+    /**
+     * Teleports a group of players together, unless the target is out of the world's height range:
+     * then each player goes through the linked worlds handling of a regular /tpll.
+     */
+    private void teleportGroup(List<Player> targets, String[] tpllArgs, World tpWorld, double targetX, double targetZ, Double height, double targetHeight, double[] coordinates) {
+        if (targetHeight > tpWorld.getMaxHeight() || targetHeight <= tpWorld.getMinHeight()) {
+            targets.forEach(p -> p.chat("/tpll " + String.join(" ", tpllArgs)));
+            return;
+        }
+        BulkTeleport.start(tpWorld, targets, targetX, targetZ, height, coordinates);
+    }
+
+    /**
+     * @return whether the coordinates are outside of the area configured for players without {@code t+-.admin}
+     */
+    private static boolean isAreaRestricted(Player player, double[] coordinates) {
+        if (player.hasPermission("t+-.admin")) return false;
+        double minLat = Terraplusminus.config.getDouble("min_latitude");
+        double maxLat = Terraplusminus.config.getDouble("max_latitude");
+        double minLon = Terraplusminus.config.getDouble("min_longitude");
+        double maxLon = Terraplusminus.config.getDouble("max_longitude");
+        if (minLat == 0 || maxLat == 0 || minLon == 0 || maxLon == 0) return false;
+        return coordinates[1] < minLat || coordinates[0] < minLon || coordinates[1] > maxLat || coordinates[0] > maxLon;
     }
 
     private static void sendPluginMessageToBungeeBridge(boolean isNextServer, Player player, double[] coordinates) {
@@ -0,0 +1,109 @@
+package de.btegermany.terraplusminus.commands;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.gen.ChunkRepairQueue;
+import de.btegermany.terraplusminus.gen.pregen.PregenArea;
+import de.btegermany.terraplusminus.gen.pregen.PregenTask;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import io.papermc.paper.command.brigadier.BasicCommand;
+import io.papermc.paper.command.brigadier.CommandSourceStack;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Administration command, {@code /tplus <subcommand>}.
+ */
+public class TplusCommand implements BasicCommand {
+
+    private static final List<String> SUBCOMMANDS = List.of("repairs", "pregen", "stats");
+    private static final List<String> PREGEN_ACTIONS = List.of("bbox", "polygon", "radius", "resume", "stop", "status");
+    private static final int LISTED_REPAIRS = 10;
+
+    @Override
+    public void execute(@NotNull CommandSourceStack stack, @NotNull String[] args) {
+        CommandSender sender = stack.getSender();
+        String prefix = Terraplusminus.config.getString("prefix");
+        if (!sender.hasPermission("t+-.admin")) {
+            sender.sendMessage(prefix + "§7No permission for /tplus");
+            return;
+        }
+        if (args.length == 0) {
+            sender.sendMessage(prefix + "§7Usage: /tplus <" + String.join("|", SUBCOMMANDS) + ">");
+            return;
+        }
+
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "repairs" -> this.repairs(sender, prefix);
+            case "stats" -> GenerationMetrics.summary().forEach(line -> sender.sendMessage(prefix + "§7" + line));
+            case "pregen" -> this.pregen(sender, prefix, Arrays.copyOfRange(args, 1, args.length));
+            default -> sender.sendMessage(prefix + "§7Unknown subcommand, use one of: " + String.join(", ", SUBCOMMANDS));
+        }
+    }
+
+    private void repairs(CommandSender sender, String prefix) {
+        ChunkRepairQueue queue = ChunkRepairQueue.get();
+        if (queue == null || queue.size() == 0) {
+            sender.sendMessage(prefix + "§7No placeholder chunks are waiting for terrain data.");
+            return;
+        }
+        sender.sendMessage(prefix + "§7Placeholder chunks waiting for terrain data: §8" + queue.size());
+        for (String entry : queue.describeRetries(LISTED_REPAIRS)) {
+            sender.sendMessage(prefix + "§7 | §8" + entry);
+        }
+    }
+
+    private void pregen(CommandSender sender, String prefix, String[] args) {
+        // Players pre-generate the world they are in, the console the default world
+        World world = sender instanceof Player player ? player.getWorld() : Bukkit.getWorlds().getFirst();
+        if (args.length == 0) {
+            sender.sendMessage(prefix + "§7Usage: /tplus pregen <" + PregenArea.USAGE + " | resume | stop | status>");
+            return;
+        }
+        try {
+            switch (args[0].toLowerCase(Locale.ROOT)) {
+                case "resume" -> PregenTask.resume(world, sender);
+                case "stop" -> sender.sendMessage(prefix + (PregenTask.stop(world)
+                        ? "§7Pre-generation stopped, resume it with /tplus pregen resume"
+                        : "§7No pre-generation is running in " + world.getName()));
+                case "status" -> {
+                    String status = PregenTask.status(world);
+                    sender.sendMessage(prefix + "§7" + (status == null ? "No pre-generation is running in " + world.getName() : status));
+                }
+                default -> PregenTask.start(world, List.of(args), sender);
+            }
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(prefix + "§c" + e.getMessage());
+        } catch (OutOfProjectionBoundsException e) {
+            sender.sendMessage(prefix + "§cThe area is not within projection bounds");
+        }
+    }
+
+    @Override
+    public @NotNull Collection<String> suggest(@NotNull CommandSourceStack stack, @NotNull String[] args) {
+        if (!stack.getSender().hasPermission("t+-.admin")) return List.of();
+        if (args.length <= 1) {
+            String start = args.length == 0 ? "" : args[0].toLowerCase(Locale.ROOT);
+            return SUBCOMMANDS.stream().filter(subcommand -> subcommand.startsWith(start)).toList();
+        }
+        if (args.length == 2 && args[0].equalsIgnoreCase("pregen")) {
+            String start = args[1].toLowerCase(Locale.ROOT);
+            return PREGEN_ACTIONS.stream().filter(action -> action.startsWith(start)).toList();
+        }
+        return List.of();
+    }
+
+    @Override
+    public String permission() {
+        return "t+-.admin";
+    }
+
+}
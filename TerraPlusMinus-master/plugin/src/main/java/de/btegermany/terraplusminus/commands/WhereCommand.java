@@ -1,6 +1,7 @@
 package de.btegermany.terraplusminus.commands;
 
 import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.data.ProjectionGrid;
 import io.papermc.paper.command.brigadier.BasicCommand;
 import io.papermc.paper.command.brigadier.CommandSourceStack;
 import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
@@ -15,7 +16,7 @@ import org.jetbrains.annotations.NotNull;
 
 public class WhereCommand implements BasicCommand {
 
-    private final EarthGeneratorSettings bteGeneratorSettings = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS);
+    private final ProjectionGrid projection = new ProjectionGrid(EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS).projection());
 
     @Override
     public void execute(@NotNull CommandSourceStack stack, @NotNull String[] args) {
@@ -36,7 +37,7 @@ public class WhereCommand implements BasicCommand {
         double playerX = player.getLocation().getX() - xOffset;
         double playerZ = player.getLocation().getZ() - zOffset;
         try {
-            double[] coordinates = this.bteGeneratorSettings.projection().toGeo(playerX, playerZ);
+            double[] coordinates = this.projection.toGeo(playerX, playerZ);
             message.addExtra("§7Your coordinates are:");
             message.addExtra("\n§8" + coordinates[1] + ", " + coordinates[0] + "§7.");
             message.setClickEvent(new ClickEvent(ClickEvent.Action.OPEN_URL, "https://maps.google.com/maps?t=k&q=loc:" + coordinates[1] + "+" + coordinates[0]));
@@ -0,0 +1,276 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive concurrency limit for the upstream APIs Terra-- fetches data from, using additive increase / multiplicative decrease.
+ * <p>
+ * Each upstream host has its own window of allowed concurrent requests, taken by the {@link UpstreamGateway} for each request
+ * it forwards to that host. The window grows by about one request per window of healthy responses, and is cut down when the host
+ * throttles us (HTTP 429 or 503) or drops connections. A throttled host is paused for the duration of its Retry-After header
+ * when there is one, or for an exponentially growing delay otherwise. Other hosts are not affected.
+ * <p>
+ * Chunk loads have a window of their own, {@value #CHUNKS}, which bounds how many chunks are fetched at the same time
+ * whatever hosts they need. It grows while chunks load about as fast as they do when idle, and shrinks when they fail.
+ */
+public final class AdaptiveRateLimiter {
+
+    public static final String CHUNKS = "chunks";
+
+    private static final double MIN_WINDOW = 1.0d;
+    private static final double THROTTLE_DECREASE = 0.5d;
+    private static final double OVERLOAD_DECREASE = 0.75d;
+    private static final long MIN_BACKOFF_MILLIS = 500L;
+    private static final long MAX_BACKOFF_MILLIS = 30_000L;
+    private static final long MAX_RETRY_AFTER_MILLIS = MAX_BACKOFF_MILLIS * 4;
+    private static final long HEALTHY_LATENCY_SLACK_MILLIS = 250L;
+    private static final long WARNING_INTERVAL_MILLIS = 10_000L;
+
+    private static final Map<String, AdaptiveRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private final String host;
+    private final double maxWindow;
+
+    // All guarded by this
+    private double window;
+    private int inFlight;
+    private long blockedUntil;
+    private long lastDecrease;
+    private int consecutiveThrottles;
+    private double minLatency = Double.MAX_VALUE;
+    private long lastWarning;
+
+    private AdaptiveRateLimiter(String host) {
+        this.host = host;
+        this.window = Math.max(MIN_WINDOW, Terraplusminus.config.getInt("rate_limit.initial_concurrency", 12));
+        this.maxWindow = Math.max(this.window, Terraplusminus.config.getInt("rate_limit.max_concurrency", 64));
+    }
+
+    /**
+     * Tries to reserve a chunk load slot.
+     *
+     * @param reserve how many slots of the window to leave free, e.g. for more urgent requests
+     * @return a permit that must be released once the chunk is loaded, or null if the window is full
+     */
+    @Nullable
+    public static Permit tryAcquire(int reserve) {
+        AdaptiveRateLimiter limiter = forHost(CHUNKS);
+        if (!limiter.tryAcquire(System.currentTimeMillis(), reserve)) return null;
+        return new Permit(limiter, System.nanoTime());
+    }
+
+    /**
+     * Checks whether a chunk load could get a slot right now, without reserving it.
+     * Used to turn requests away early, the slot itself being acquired right before the fetch.
+     *
+     * @param reserve how many slots of the window must stay free
+     * @return whether the window has a free slot beyond the reserve
+     */
+    public static boolean hasCapacity(int reserve) {
+        return forHost(CHUNKS).hasCapacity(System.currentTimeMillis(), reserve);
+    }
+
+    /**
+     * Reserves a request slot on an upstream host, waiting until one is free and the host is not paused.
+     *
+     * @param host the host the request is sent to
+     * @return a permit that must be released with the outcome of the request
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @NotNull
+    public static Permit acquire(@NotNull String host) throws InterruptedException {
+        AdaptiveRateLimiter limiter = forHost(host);
+        limiter.acquire();
+        return new Permit(limiter, System.nanoTime());
+    }
+
+    /**
+     * @return the current concurrency window of each known upstream host, and of chunk loads
+     */
+    public static Map<String, Integer> windows() {
+        Map<String, Integer> windows = new TreeMap<>();
+        LIMITERS.forEach((host, limiter) -> windows.put(host, limiter.window()));
+        return Collections.unmodifiableMap(windows);
+    }
+
+    /**
+     * @return the number of requests currently in flight to all upstream hosts
+     */
+    public static int inFlight() {
+        int inFlight = 0;
+        for (AdaptiveRateLimiter limiter : LIMITERS.values()) {
+            if (limiter.host.equals(CHUNKS)) continue;
+            synchronized (limiter) {
+                inFlight += limiter.inFlight;
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * Parses the value of a Retry-After header.
+     *
+     * @param value the header value, in seconds
+     * @return the delay in milliseconds, or -1 if there is none
+     */
+    public static long parseRetryAfter(@Nullable String value) {
+        if (value == null) return -1;
+        try {
+            long seconds = Long.parseLong(value.trim());
+            return seconds < 0 ? -1 : Math.min(MAX_RETRY_AFTER_MILLIS, TimeUnit.SECONDS.toMillis(seconds));
+        } catch (NumberFormatException e) {
+            return -1; // HTTP dates are allowed too, but none of the APIs we use send them
+        }
+    }
+
+    private static AdaptiveRateLimiter forHost(@NotNull String host) {
+        return LIMITERS.computeIfAbsent(host, AdaptiveRateLimiter::new);
+    }
+
+    public synchronized int window() {
+        return (int) this.window;
+    }
+
+    private synchronized boolean hasCapacity(long now, int reserve) {
+        return now >= this.blockedUntil && this.inFlight < (int) this.window - reserve;
+    }
+
+    private synchronized boolean tryAcquire(long now, int reserve) {
+        if (now < this.blockedUntil || this.inFlight >= (int) this.window - reserve) return false;
+        this.inFlight++;
+        return true;
+    }
+
+    private synchronized void acquire() throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (this.tryAcquire(now, 0)) return;
+            // Woken up early by releases, but a pause has to run out on its own
+            this.wait(now < this.blockedUntil ? this.blockedUntil - now : MIN_BACKOFF_MILLIS);
+        }
+    }
+
+    private synchronized void release() {
+        this.inFlight--;
+        this.notifyAll();
+    }
+
+    private synchronized void onSuccess(long latencyMillis) {
+        this.consecutiveThrottles = 0;
+        this.minLatency = Math.min(this.minLatency, latencyMillis);
+        // Only grow while the host answers about as fast as it does when idle, otherwise we are just queueing on its side
+        if (latencyMillis <= 2 * this.minLatency + HEALTHY_LATENCY_SLACK_MILLIS && this.inFlight + 1 >= (int) this.window) {
+            this.window = Math.min(this.maxWindow, this.window + 1.0d / this.window);
+        }
+    }
+
+    private synchronized void onThrottled(long now, long retryAfterMillis) {
+        this.consecutiveThrottles++;
+        long backoff = retryAfterMillis > 0
+                ? retryAfterMillis
+                : Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(this.consecutiveThrottles - 1, 16));
+        this.blockedUntil = Math.max(this.blockedUntil, now + backoff);
+        GenerationMetrics.HOST_PAUSES.increment();
+        this.decrease(now, THROTTLE_DECREASE);
+        if (now - this.lastWarning >= WARNING_INTERVAL_MILLIS) {
+            this.lastWarning = now;
+            Terraplusminus.instance.getComponentLogger().warn(
+                    "{} is throttling requests, pausing it for {} ms and reducing concurrency to {}",
+                    this.host, backoff, (int) this.window
+            );
+        }
+    }
+
+    private synchronized void onOverloaded(long now, boolean pause) {
+        if (pause) {
+            this.blockedUntil = Math.max(this.blockedUntil, now + MIN_BACKOFF_MILLIS);
+            GenerationMetrics.HOST_PAUSES.increment();
+        }
+        this.decrease(now, OVERLOAD_DECREASE);
+    }
+
+    private void decrease(long now, double factor) {
+        // A burst of failures is usually caused by a single overload, only react to it once per round trip
+        long roundTrip = this.minLatency == Double.MAX_VALUE ? MIN_BACKOFF_MILLIS : (long) Math.max(this.minLatency, MIN_BACKOFF_MILLIS);
+        if (now - this.lastDecrease < roundTrip) return;
+        this.lastDecrease = now;
+        this.window = Math.max(MIN_WINDOW, this.window * factor);
+    }
+
+    /**
+     * A reservation of one request slot, released exactly once with the outcome of the request.
+     */
+    public static final class Permit {
+
+        private final AdaptiveRateLimiter limiter;
+        private final long startNanos;
+        private boolean released;
+
+        private Permit(AdaptiveRateLimiter limiter, long startNanos) {
+            this.limiter = limiter;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases a chunk load permit.
+         * Has the signature of a {@link java.util.concurrent.CompletableFuture#whenComplete} callback.
+         *
+         * @param result ignored
+         * @param error  the error the chunk failed to load with, if it did
+         */
+        public void release(Object result, @Nullable Throwable error) {
+            if (error == null) {
+                this.succeeded();
+            } else if (this.release()) {
+                // Which host failed was already handled by the gateway, only load fewer chunks at once for a while
+                this.limiter.onOverloaded(System.currentTimeMillis(), false);
+            }
+        }
+
+        /**
+         * Releases this permit after a healthy response, including "not found" ones.
+         */
+        public void succeeded() {
+            if (!this.release()) return;
+            this.limiter.onSuccess(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos));
+        }
+
+        /**
+         * Releases this permit after the host throttled the request.
+         *
+         * @param retryAfterMillis how long the host asked us to wait, or -1 if it did not say
+         */
+        public void throttled(long retryAfterMillis) {
+            if (!this.release()) return;
+            this.limiter.onThrottled(System.currentTimeMillis(), retryAfterMillis);
+        }
+
+        /**
+         * Releases this permit after the host failed to answer: a server error, a dropped connection or a timeout.
+         */
+        public void overloaded() {
+            if (!this.release()) return;
+            this.limiter.onOverloaded(System.currentTimeMillis(), true);
+        }
+
+        private boolean release() {
+            synchronized (this) {
+                if (this.released) return false;
+                this.released = true;
+            }
+            this.limiter.release();
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+package de.btegermany.terraplusminus.data;
+
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorPipelines;
+import net.buildtheearth.terraminusminus.generator.data.TreeCoverBaker;
+import net.buildtheearth.terraminusminus.substitutes.BlockState;
+import net.buildtheearth.terraminusminus.substitutes.TerraBukkit;
+import org.bukkit.Bukkit;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static net.buildtheearth.terraminusminus.substitutes.TerraBukkit.toBukkitBlockData;
+
+/**
+ * Binary encoding of {@link CachedChunkData} used by the persistent {@link ChunkDataStore}.
+ * <p>
+ * Layout of a record (big endian):
+ * <pre>
+ *   int[256]  ground heights
+ *   int[256]  water heights
+ *   byte[256] tree cover
+ *   short     palette size, followed by that many UTF-8 encoded block data strings (short length + bytes)
+ *   byte[256] palette index + 1 of each column's surface block, 0 meaning no surface block,
+ *             or short[256] if the palette has more than {@value #MAX_BYTE_PALETTE_SIZE} entries (every column is different)
+ * </pre>
+ * Columns are stored in x-major order ({@code x * 16 + z}), like Terra-- does.
+ */
+public final class ChunkDataCodec {
+
+    public static final int COLUMNS = 16 * 16;
+    private static final int MAX_BYTE_PALETTE_SIZE = 255;
+
+    private ChunkDataCodec() {
+        throw new IllegalStateException();
+    }
+
+    public static byte[] encode(CachedChunkData data) {
+        List<String> palette = new ArrayList<>();
+        Map<String, Integer> paletteIndices = new HashMap<>();
+        short[] surfaceIndices = new short[COLUMNS];
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                BlockState state = data.surfaceBlock(x, z);
+                if (state == null) continue;
+                String key = toBukkitBlockData(state).getAsString();
+                Integer index = paletteIndices.get(key);
+                if (index == null) {
+                    index = palette.size();
+                    palette.add(key);
+                    paletteIndices.put(key, index);
+                }
+                surfaceIndices[x * 16 + z] = (short) (index + 1);
+            }
+        }
+
+        byte[][] encodedPalette = new byte[palette.size()][];
+        int paletteBytes = 0;
+        for (int i = 0; i < encodedPalette.length; i++) {
+            encodedPalette[i] = palette.get(i).getBytes(StandardCharsets.UTF_8);
+            paletteBytes += Short.BYTES + encodedPalette[i].length;
+        }
+
+        boolean wideIndices = palette.size() > MAX_BYTE_PALETTE_SIZE;
+        int indexBytes = COLUMNS * (wideIndices ? Short.BYTES : Byte.BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(COLUMNS * Integer.BYTES * 2 + COLUMNS + Short.BYTES + paletteBytes + indexBytes);
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                buffer.putInt(data.groundHeight(x, z));
+            }
+        }
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                buffer.putInt(data.waterHeight(x, z));
+            }
+        }
+        byte[] treeCover = data.getCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, TreeCoverBaker.FALLBACK_TREE_DENSITY);
+        buffer.put(treeCover, 0, COLUMNS);
+        buffer.putShort((short) encodedPalette.length);
+        for (byte[] entry : encodedPalette) {
+            buffer.putShort((short) entry.length);
+            buffer.put(entry);
+        }
+        for (short index : surfaceIndices) {
+            if (wideIndices) {
+                buffer.putShort(index);
+            } else {
+                buffer.put((byte) index);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a record from the current position of the given buffer.
+     * The buffer is read in place, it can therefore be a slice of a memory mapped file.
+     *
+     * @param buffer a buffer positioned at the start of a record
+     * @return the decoded chunk data
+     */
+    public static CachedChunkData decode(ByteBuffer buffer) {
+        CachedChunkData.Builder builder = CachedChunkData.builder();
+
+        int[] groundHeights = new int[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            groundHeights[i] = buffer.getInt();
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            int ground = groundHeights[i];
+            int water = buffer.getInt();
+            builder.surfaceHeight(i >> 4, i & 0xF, ground);
+            if (water > ground) {
+                builder.updateWaterDepth(i >> 4, i & 0xF, water - ground);
+            }
+        }
+
+        byte[] treeCover = new byte[COLUMNS];
+        buffer.get(treeCover);
+        builder.putCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, treeCover);
+
+        BlockState[] palette = new BlockState[buffer.getShort()];
+        for (int i = 0; i < palette.length; i++) {
+            byte[] entry = new byte[buffer.getShort()];
+            buffer.get(entry);
+            palette[i] = TerraBukkit.fromBukkitBlockData(Bukkit.createBlockData(new String(entry, StandardCharsets.UTF_8)));
+        }
+        BlockState[] surfaceBlocks = builder.surfaceBlocks();
+        boolean wideIndices = palette.length > MAX_BYTE_PALETTE_SIZE;
+        for (int i = 0; i < COLUMNS; i++) {
+            int index = wideIndices ? buffer.getShort() & 0xFFFF : buffer.get() & 0xFF;
+            if (index != 0) {
+                surfaceBlocks[i] = palette[index - 1];
+            }
+        }
+
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,453 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Write-through persistent store for {@link CachedChunkData}, so that terrain which has already been fetched once
+ * survives cache evictions, restarts and WorldEdit regenerations.
+ * <p>
+ * Chunks are grouped in region files of {@value #REGION_SIZE}x{@value #REGION_SIZE} chunks.
+ * Each region file starts with a header made of a magic number, a format version and a table of contents
+ * with the offset, length and CRC32 of every chunk record. Records are encoded by {@link ChunkDataCodec}
+ * and are appended, the table of contents being updated afterward. Once rewritten chunks have left more dead records
+ * than live ones in a file, it is compacted.
+ * <p>
+ * The start of a region file is memory mapped and records are decoded straight from the mapping. Records appended since
+ * are read through the file channel, and the mapping is only extended once the file has doubled in size.
+ * <p>
+ * At most {@value #MAX_OPEN_REGIONS} region files are open per store, the least recently used one that is not being
+ * read or written being closed first. Writes go through a single background thread, see {@link #writeAsync(ChunkPos, CachedChunkData)}.
+ * <p>
+ * Stores are identified by their directory, see {@link #open(Path)}. The {@link TerrainDataService} uses one per horizontal
+ * terrain offset, the only generator setting that differs between worlds, and per {@link #datasetsHash(Path) dataset configuration},
+ * so that editing the datasets does not keep serving terrain generated from the old ones.
+ */
+public final class ChunkDataStore {
+
+    public static final int FORMAT_VERSION = 1;
+    public static final int REGION_SIZE = 32;
+
+    private static final int MAGIC = 0x54504D43; // "TPMC"
+    private static final int CHUNKS_PER_REGION = REGION_SIZE * REGION_SIZE;
+    private static final int ENTRY_SIZE = Integer.BYTES * 3; // offset, length, crc32
+    private static final int HEADER_SIZE = Integer.BYTES * 2 + CHUNKS_PER_REGION * ENTRY_SIZE;
+    private static final int MAX_OPEN_REGIONS = 128;
+    private static final long MIN_COMPACTION_BYTES = 4L << 20;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10L;
+    private static final List<String> DATASET_CONFIGS = List.of("heights", "tree_cover", "osm.json5");
+
+    private static final Map<Path, ChunkDataStore> OPEN_STORES = new ConcurrentHashMap<>();
+    private static ExecutorService writer; // guarded by OPEN_STORES
+
+    private final Path directory;
+    private final LinkedHashMap<Long, Region> regions = new LinkedHashMap<>(16, 0.75f, true); // guarded by this, in access order
+
+    private ChunkDataStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the store backed by the given directory, opening it if needed.
+     *
+     * @param directory the directory in which the region files are kept
+     * @return the store for that directory
+     */
+    public static ChunkDataStore open(@NotNull Path directory) {
+        return OPEN_STORES.computeIfAbsent(directory.toAbsolutePath().normalize(), ChunkDataStore::new);
+    }
+
+    /**
+     * Waits for the pending writes, then flushes and closes every open store.
+     * Stores can still be used afterward, they will reopen their files.
+     */
+    public static void closeAll() {
+        ExecutorService pending;
+        synchronized (OPEN_STORES) {
+            pending = writer;
+            writer = null;
+        }
+        if (pending != null) {
+            pending.shutdown();
+            try {
+                if (!pending.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    Terraplusminus.instance.getComponentLogger().warn("Chunk data store writes did not finish in time, some chunks will be fetched again");
+                    pending.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        OPEN_STORES.values().forEach(ChunkDataStore::close);
+    }
+
+    /**
+     * Hashes the Terra-- dataset configurations ({@code heights/}, {@code tree_cover/} and {@code osm.json5}) of a config root.
+     *
+     * @param configRoot the Terra-- config root
+     * @return 8 hexadecimal digits, the same as long as the configurations are
+     */
+    @NotNull
+    public static String datasetsHash(@NotNull Path configRoot) {
+        CRC32 crc = new CRC32();
+        for (String name : DATASET_CONFIGS) {
+            Path path = configRoot.resolve(name);
+            if (!Files.exists(path)) continue;
+            try (Stream<Path> files = Files.walk(path)) {
+                List<Path> configs = files.filter(file -> Files.isRegularFile(file) && file.getFileName().toString().endsWith(".json5"))
+                        .sorted()
+                        .toList();
+                for (Path file : configs) {
+                    crc.update(configRoot.relativize(file).toString().replace('\\', '/').getBytes(StandardCharsets.UTF_8));
+                    crc.update(Files.readAllBytes(file));
+                }
+            } catch (IOException e) {
+                Terraplusminus.instance.getComponentLogger().warn("Failed to read the dataset configurations in {}", path, e);
+            }
+        }
+        return String.format("%08x", crc.getValue());
+    }
+
+    /**
+     * Reads a chunk from the store.
+     *
+     * @param pos the position of the chunk
+     * @return the stored chunk data, or null if the chunk is not stored or its record is corrupted
+     */
+    @Nullable
+    public CachedChunkData read(@NotNull ChunkPos pos) {
+        Region region = this.acquire(pos.x() >> 5, pos.z() >> 5, false);
+        if (region == null) return null;
+        try {
+            return region.read(localIndex(pos));
+        } catch (IOException | RuntimeException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to read chunk {}/{} from the chunk data store", pos.x(), pos.z(), e);
+            return null;
+        } finally {
+            this.release(region);
+        }
+    }
+
+    /**
+     * Writes a chunk to the store, replacing any previous record for that chunk.
+     *
+     * @param pos  the position of the chunk
+     * @param data the data to store
+     */
+    public void write(@NotNull ChunkPos pos, @NotNull CachedChunkData data) {
+        Region region = null;
+        try {
+            byte[] record = ChunkDataCodec.encode(data);
+            region = this.acquire(pos.x() >> 5, pos.z() >> 5, true);
+            region.write(localIndex(pos), record);
+        } catch (IOException | RuntimeException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to write chunk {}/{} to the chunk data store", pos.x(), pos.z(), e);
+        } finally {
+            if (region != null) this.release(region);
+        }
+    }
+
+    /**
+     * Writes a chunk to the store from the store's background thread, see {@link #write(ChunkPos, CachedChunkData)}.
+     * Pending writes are completed by {@link #closeAll()}.
+     */
+    public void writeAsync(@NotNull ChunkPos pos, @NotNull CachedChunkData data) {
+        synchronized (OPEN_STORES) {
+            if (writer == null) {
+                writer = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "Terraplusminus chunk data store");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            writer.execute(() -> this.write(pos, data));
+        }
+    }
+
+    /**
+     * Forces pending writes to disk and closes the region files. Regions in use are closed when released.
+     */
+    public void close() {
+        List<Region> closed = new ArrayList<>();
+        synchronized (this) {
+            for (Region region : this.regions.values()) {
+                region.evicted = true;
+                if (region.users == 0) closed.add(region);
+            }
+            this.regions.clear();
+        }
+        closed.forEach(Region::close);
+    }
+
+    private Region acquire(int regionX, int regionZ, boolean create) {
+        long key = ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+        Region evicted = null;
+        Region region;
+        synchronized (this) {
+            region = this.regions.get(key);
+            if (region == null) {
+                Path file = this.directory.resolve("r." + regionX + "." + regionZ + ".tpd");
+                if (!create && !Files.exists(file)) return null;
+                if (this.regions.size() >= MAX_OPEN_REGIONS) {
+                    // Keep the number of open file handles bounded during large pregenerations
+                    evicted = this.evictLeastRecentlyUsed();
+                }
+                region = new Region(file);
+                this.regions.put(key, region);
+            }
+            region.users++;
+        }
+        if (evicted != null) evicted.close();
+        return region;
+    }
+
+    /**
+     * Removes the least recently used region nobody is using. With all regions in use, the limit is exceeded until they are released.
+     */
+    @Nullable
+    private Region evictLeastRecentlyUsed() {
+        Iterator<Region> iterator = this.regions.values().iterator();
+        while (iterator.hasNext()) {
+            Region region = iterator.next();
+            if (region.users > 0) continue;
+            iterator.remove();
+            region.evicted = true;
+            return region;
+        }
+        return null;
+    }
+
+    private void release(Region region) {
+        boolean close;
+        synchronized (this) {
+            close = --region.users == 0 && region.evicted;
+        }
+        if (close) region.close();
+    }
+
+    private static int localIndex(ChunkPos pos) {
+        return (pos.x() & (REGION_SIZE - 1)) * REGION_SIZE + (pos.z() & (REGION_SIZE - 1));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static final class Region {
+
+        private final Path file;
+        // Both guarded by the store
+        private int users;
+        private boolean evicted;
+        // All guarded by this
+        private FileChannel channel;
+        private int[] entries; // Table of contents, loaded with the channel: offset, length and crc32 of each chunk
+        private long liveBytes;
+        private MappedByteBuffer mapping;
+        private boolean compactionFailed;
+
+        private Region(Path file) {
+            this.file = file;
+        }
+
+        synchronized CachedChunkData read(int index) throws IOException {
+            if (this.channel == null && !Files.exists(this.file)) return null;
+            FileChannel channel = this.channel();
+
+            int offset = this.entries[index * 3];
+            int length = this.entries[index * 3 + 1];
+            int checksum = this.entries[index * 3 + 2];
+            if (offset == 0 || length <= 0) return null;
+            long size = channel.size();
+            if ((long) offset + length > size) {
+                Terraplusminus.instance.getComponentLogger().warn("Truncated record in {}", this.file);
+                return null;
+            }
+
+            ByteBuffer record;
+            if (this.mapping == null || ((long) offset + length > this.mapping.capacity() && size >= 2L * this.mapping.capacity())) {
+                this.mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            if ((long) offset + length <= this.mapping.capacity()) {
+                record = this.mapping.slice(offset, length);
+            } else {
+                // Appended since the file was mapped
+                record = ByteBuffer.allocate(length);
+                readFully(channel, record, offset);
+                record.flip();
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                Terraplusminus.instance.getComponentLogger().warn("Checksum mismatch for record {} in {}, ignoring it", index, this.file);
+                return null;
+            }
+            return ChunkDataCodec.decode(record);
+        }
+
+        synchronized void write(int index, byte[] record) throws IOException {
+            FileChannel channel = this.channel();
+            CRC32 crc = new CRC32();
+            crc.update(record);
+
+            long offset = channel.size();
+            if (offset + record.length > Integer.MAX_VALUE) {
+                throw new IOException("Region file " + this.file + " is full");
+            }
+            writeFully(channel, ByteBuffer.wrap(record), offset);
+
+            ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE);
+            entry.putInt((int) offset).putInt(record.length).putInt((int) crc.getValue()).flip();
+            writeFully(channel, entry, Integer.BYTES * 2L + (long) index * ENTRY_SIZE);
+
+            this.liveBytes += record.length - this.entries[index * 3 + 1];
+            this.entries[index * 3] = (int) offset;
+            this.entries[index * 3 + 1] = record.length;
+            this.entries[index * 3 + 2] = (int) crc.getValue();
+
+            long records = offset + record.length - HEADER_SIZE;
+            if (!this.compactionFailed && records >= MIN_COMPACTION_BYTES && records > 2 * this.liveBytes) {
+                try {
+                    this.compact();
+                } catch (IOException e) {
+                    // The record is written. Retrying on every write would copy the whole file each time for nothing,
+                    // the file is compacted again once it is reopened, e.g. after a restart
+                    this.compactionFailed = true;
+                    Terraplusminus.instance.getComponentLogger().warn("Failed to compact region file {}, not trying again until it is reopened", this.file, e);
+                }
+            }
+        }
+
+        synchronized void close() {
+            this.mapping = null;
+            if (this.channel == null) return;
+            try {
+                this.channel.force(true);
+                this.channel.close();
+            } catch (IOException e) {
+                Terraplusminus.instance.getComponentLogger().warn("Failed to close region file {}", this.file, e);
+            }
+            this.channel = null;
+        }
+
+        /**
+         * Rewrites the file with only the live records, replacing it atomically.
+         * <p>
+         * Mappings are only released by the garbage collector, and Windows refuses to replace a file that is still mapped:
+         * the move then fails, leaving the original file untouched and the channel to be reopened on the next access.
+         */
+        private void compact() throws IOException {
+            Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            int[] compacted = new int[this.entries.length];
+            try (FileChannel output = FileChannel.open(temporary, READ, WRITE, CREATE, TRUNCATE_EXISTING)) {
+                long position = HEADER_SIZE;
+                for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                    int length = this.entries[i * 3 + 1];
+                    if (this.entries[i * 3] == 0 || length <= 0) continue;
+                    ByteBuffer record = ByteBuffer.allocate(length);
+                    readFully(this.channel, record, this.entries[i * 3]);
+                    record.flip();
+                    writeFully(output, record, position);
+                    compacted[i * 3] = (int) position;
+                    compacted[i * 3 + 1] = length;
+                    compacted[i * 3 + 2] = this.entries[i * 3 + 2];
+                    position += length;
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION);
+                for (int value : compacted) header.putInt(value);
+                header.flip();
+                writeFully(output, header, 0);
+                output.force(true);
+            }
+            this.close();
+            try {
+                Files.move(temporary, this.file, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            this.channel(); // Reloads the table of contents
+        }
+
+        private FileChannel channel() throws IOException {
+            if (this.channel != null) return this.channel;
+            Files.createDirectories(this.file.getParent());
+            FileChannel channel = FileChannel.open(this.file, READ, WRITE, CREATE);
+            int[] entries = new int[CHUNKS_PER_REGION * 3];
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(FORMAT_VERSION).position(HEADER_SIZE).flip();
+                writeFully(channel, header, 0);
+            } else if (!readHeader(channel, entries)) {
+                channel.close();
+                Path backup = this.file.resolveSibling(this.file.getFileName() + ".old");
+                Terraplusminus.instance.getComponentLogger().warn("Region file {} has an unknown format, moving it to {}", this.file, backup);
+                Files.move(this.file, backup, REPLACE_EXISTING);
+                return this.channel();
+            }
+            long liveBytes = 0;
+            for (int i = 0; i < CHUNKS_PER_REGION; i++) {
+                if (entries[i * 3] != 0) liveBytes += Math.max(0, entries[i * 3 + 1]);
+            }
+            this.entries = entries;
+            this.liveBytes = liveBytes;
+            this.channel = channel;
+            return channel;
+        }
+
+        /**
+         * Checks the magic number and version of a region file, and reads its table of contents.
+         */
+        private static boolean readHeader(FileChannel channel, int[] entries) throws IOException {
+            if (channel.size() < HEADER_SIZE) return false;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) return false;
+            header.asIntBuffer().get(entries);
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package de.btegermany.terraplusminus.data;
+
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Micro-batching stage in front of Terra--'s chunk loader.
+ * <p>
+ * Requests are collected for a few milliseconds and grouped by tile, a square of chunks that is meant to line up with
+ * the tiles the upstream datasets are split in. For each tile, a single leader chunk is loaded first.
+ * Once it is done, the tiles it needed are in Terra--'s dataset caches, and the rest of the group is loaded from there
+ * instead of every chunk racing for the same cold tiles.
+ * <p>
+ * An {@link AdaptiveRateLimiter} slot is only acquired right before a chunk is actually loaded, and the latency fed back to it
+ * is the one of that load alone. Requests that find no free slot wait here, in order, until one is released.
+ * Requests that are not loading yet count against the slots, see {@link #queued()}, so that callers checking
+ * {@link AdaptiveRateLimiter#hasCapacity(int)} do not keep piling them up here.
+ */
+final class ChunkRequestBatcher {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Terraplusminus chunk request batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final long RETRY_MILLIS = 10L; // When waiting for a slot released by another batcher
+    private static final AtomicInteger QUEUED = new AtomicInteger(); // Across batchers, like the slots
+
+    private final Function<ChunkPos, CompletableFuture<CachedChunkData>> loader;
+    private final int tileShift;
+    private final long windowMillis;
+
+    private Map<Long, List<PendingRequest>> pending = new HashMap<>(); // guarded by this
+    private boolean flushScheduled; // guarded by this
+    private final Queue<PendingRequest> waiting = new ArrayDeque<>(); // guarded by this
+    private boolean drainScheduled; // guarded by this
+
+    /**
+     * @param loader       the actual chunk loader
+     * @param tileSize     the width of a tile, in chunks, rounded up to a power of two
+     * @param windowMillis how long requests are collected before being sent
+     */
+    ChunkRequestBatcher(Function<ChunkPos, CompletableFuture<CachedChunkData>> loader, int tileSize, long windowMillis) {
+        this.loader = loader;
+        this.tileShift = 32 - Integer.numberOfLeadingZeros(Math.max(1, tileSize) - 1);
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @return how many requests were submitted to any batcher and are not loading yet, collected, waiting for their leader or for a slot
+     */
+    static int queued() {
+        return QUEUED.get();
+    }
+
+    CompletableFuture<CachedChunkData> submit(@NotNull ChunkPos pos) {
+        QUEUED.incrementAndGet();
+        CompletableFuture<CachedChunkData> result = new CompletableFuture<>();
+        if (this.windowMillis <= 0) return this.load(new PendingRequest(pos, result));
+
+        long tile = ((long) (pos.x() >> this.tileShift) << 32) | ((pos.z() >> this.tileShift) & 0xFFFFFFFFL);
+        synchronized (this) {
+            this.pending.computeIfAbsent(tile, t -> new ArrayList<>()).add(new PendingRequest(pos, result));
+            if (!this.flushScheduled) {
+                this.flushScheduled = true;
+                SCHEDULER.schedule(this::flush, this.windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return result;
+    }
+
+    private void flush() {
+        Map<Long, List<PendingRequest>> batch;
+        synchronized (this) {
+            batch = this.pending;
+            this.pending = new HashMap<>();
+            this.flushScheduled = false;
+        }
+        for (List<PendingRequest> group : batch.values()) {
+            PendingRequest leader = group.getFirst();
+            CompletableFuture<CachedChunkData> leaderFuture = this.load(leader);
+            if (group.size() == 1) continue;
+            // Followers go once the leader is done, whether it succeeded or not
+            leaderFuture.handle((data, error) -> {
+                for (int i = 1; i < group.size(); i++) {
+                    this.load(group.get(i));
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Loads a chunk as soon as a request slot is free.
+     *
+     * @return the result of the request
+     */
+    private CompletableFuture<CachedChunkData> load(PendingRequest request) {
+        AdaptiveRateLimiter.Permit permit;
+        synchronized (this) {
+            // Do not overtake the requests already waiting for a slot
+            permit = this.waiting.isEmpty() ? AdaptiveRateLimiter.tryAcquire(0) : null;
+            if (permit == null) {
+                this.waiting.add(request);
+                this.scheduleDrain();
+                return request.result;
+            }
+        }
+        this.fetch(request, permit);
+        return request.result;
+    }
+
+    private void fetch(PendingRequest request, AdaptiveRateLimiter.Permit permit) {
+        QUEUED.decrementAndGet();
+        CompletableFuture<CachedChunkData> future;
+        try {
+            future = this.loader.apply(request.pos);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete(permit::release);
+        future.whenComplete((data, error) -> {
+            if (error != null) {
+                request.result.completeExceptionally(error);
+            } else {
+                request.result.complete(data);
+            }
+            // Our slot is free again. Not drained right here, which would recurse through fetch when the loader completes synchronously
+            SCHEDULER.execute(this::drain);
+        });
+    }
+
+    /**
+     * Fetches waiting requests while there are free slots.
+     */
+    private void drain() {
+        while (true) {
+            PendingRequest request;
+            AdaptiveRateLimiter.Permit permit;
+            synchronized (this) {
+                if (this.waiting.isEmpty()) return;
+                permit = AdaptiveRateLimiter.tryAcquire(0);
+                if (permit == null) {
+                    this.scheduleDrain();
+                    return;
+                }
+                request = this.waiting.poll();
+            }
+            this.fetch(request, permit);
+        }
+    }
+
+    private void scheduleDrain() { // Holding this
+        if (this.drainScheduled) return;
+        this.drainScheduled = true;
+        SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                this.drainScheduled = false;
+            }
+            this.drain();
+        }, RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private record PendingRequest(ChunkPos pos, CompletableFuture<CachedChunkData> result) {
+    }
+
+}
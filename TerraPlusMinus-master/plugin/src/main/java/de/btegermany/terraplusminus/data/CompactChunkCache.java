@@ -0,0 +1,430 @@
+package de.btegermany.terraplusminus.data;
+
+import lombok.Getter;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorPipelines;
+import net.buildtheearth.terraminusminus.generator.data.TreeCoverBaker;
+import net.buildtheearth.terraminusminus.substitutes.BlockState;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static de.btegermany.terraplusminus.data.ChunkDataCodec.COLUMNS;
+
+/**
+ * Byte-budgeted cache of {@link CachedChunkData} in a compact encoding, stored off-heap.
+ * <p>
+ * Records are appended to a ring of direct buffers ("slabs") allocated as the ring fills up, until the budget is reached.
+ * Once the ring wraps around, the oldest records are evicted as new ones overwrite them, so memory use is exactly bounded
+ * and nothing depends on the garbage collector. The index is an open-addressing table of primitive longs.
+ * <p>
+ * Layout of a record:
+ * <pre>
+ *   varint    ground height of the first column, then 255 zigzag varint deltas to the previous column
+ *             (the column before in the same row, or the first column of the previous row)
+ *   byte      1 if any column has water, followed by 256 varint water depths, 0 otherwise
+ *   byte      1 if tree cover varies, followed by 256 bytes, 0 followed by the single tree cover value
+ *   varint    local palette size, followed by the {@link #PALETTE global id} of each entry as a varint,
+ *             then if not empty, byte[256] local palette index + 1 of each column's surface block, 0 meaning none
+ * </pre>
+ * Most chunks take 500 to 800 bytes, against several kilobytes for a {@link CachedChunkData} on the heap.
+ */
+public final class CompactChunkCache {
+
+    /**
+     * Rough size of an encoded chunk, to size budgets.
+     */
+    public static final int EXPECTED_RECORD_BYTES = 768;
+
+    private static final int SLAB_SIZE = 1 << 20;
+    private static final long MIN_BUDGET = 16L << 20;
+    private static final int MAX_RECORD_BYTES = 5 + 255 * 5 + 1 + COLUMNS * 5 + 1 + COLUMNS + 5 + 255 * 5 + COLUMNS;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final Palette PALETTE = new Palette();
+
+    @Getter private final long budget;
+    private final ByteBuffer[] slabs;
+    private final long capacity;
+
+    // All guarded by this
+    private long head;
+    private long liveBytes;
+    private long[] fifoKeys = new long[1024];
+    private long[] fifoValues = new long[1024];
+    private int fifoHead;
+    private int fifoSize;
+    private long[] indexKeys = new long[1024];
+    private long[] indexValues = new long[1024];
+    private int indexSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param budget the maximum number of bytes to use, rounded up to a whole number of 1 MiB slabs
+     */
+    public CompactChunkCache(long budget) {
+        int slabCount = (int) Math.max(2, Math.min(Integer.MAX_VALUE, (budget + SLAB_SIZE - 1) / SLAB_SIZE));
+        this.slabs = new ByteBuffer[slabCount];
+        this.capacity = (long) slabCount * SLAB_SIZE;
+        this.budget = this.capacity;
+        Arrays.fill(this.indexKeys, EMPTY);
+    }
+
+    /**
+     * Picks a budget large enough to hold twice the view area of a full server, but no more than an eighth of the max heap,
+     * as direct buffers count against the same limit by default.
+     *
+     * @return the default budget, in bytes
+     */
+    public static long defaultBudget() {
+        long viewArea = (2L * Bukkit.getViewDistance() + 1) * (2L * Bukkit.getViewDistance() + 1);
+        long wanted = 2 * viewArea * Math.max(1, Bukkit.getMaxPlayers()) * EXPECTED_RECORD_BYTES;
+        long ceiling = Math.max(MIN_BUDGET, Runtime.getRuntime().maxMemory() / 8);
+        return Math.clamp(wanted, MIN_BUDGET, ceiling);
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Stores a chunk, evicting the oldest chunks if the budget is used up.
+     */
+    public void put(int chunkX, int chunkZ, @NotNull CachedChunkData data) {
+        byte[] record = encode(data);
+        synchronized (this) {
+            this.append(key(chunkX, chunkZ), record);
+        }
+    }
+
+    /**
+     * @return the decoded chunk, or null if it is not cached
+     */
+    @Nullable
+    public CachedChunkData get(int chunkX, int chunkZ) {
+        byte[] record;
+        synchronized (this) {
+            long value = this.indexGet(key(chunkX, chunkZ));
+            if (value == EMPTY) {
+                this.misses.increment();
+                return null;
+            }
+            long start = value >>> 16;
+            record = new byte[(int) (value & 0xFFFF)];
+            this.slab(start).get((int) (start % SLAB_SIZE), record);
+        }
+        this.hits.increment();
+        return decode(record);
+    }
+
+    /**
+     * Frees all memory. The cache is empty but still usable afterward.
+     */
+    public synchronized void clear() {
+        Arrays.fill(this.slabs, null);
+        Arrays.fill(this.indexKeys, EMPTY);
+        this.indexSize = 0;
+        this.fifoSize = 0;
+        this.liveBytes = 0;
+    }
+
+    public synchronized int size() {
+        return this.indexSize;
+    }
+
+    /**
+     * @return the bytes taken by cached records, including outdated records of chunks that were stored again
+     */
+    public synchronized long usedBytes() {
+        return this.liveBytes;
+    }
+
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public long evictions() {
+        return this.evictions.sum();
+    }
+
+    private ByteBuffer slab(long position) {
+        int index = (int) ((position / SLAB_SIZE) % this.slabs.length);
+        ByteBuffer slab = this.slabs[index];
+        if (slab == null) {
+            slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+            this.slabs[index] = slab;
+        }
+        return slab;
+    }
+
+    private void append(long key, byte[] record) {
+        long start = this.head;
+        int offset = (int) (start % SLAB_SIZE);
+        if (offset + record.length > SLAB_SIZE) start += SLAB_SIZE - offset; // Records never span two slabs
+        long end = start + record.length;
+
+        // Evict whatever the new record overwrites, i.e. records that started less than a ring ago
+        while (this.fifoSize > 0 && this.fifoValues[this.fifoHead] >>> 16 < end - this.capacity) {
+            long evictedKey = this.fifoKeys[this.fifoHead];
+            long evictedValue = this.fifoValues[this.fifoHead];
+            if (this.indexGet(evictedKey) == evictedValue) {
+                this.indexRemove(evictedKey);
+                this.evictions.increment();
+            }
+            this.liveBytes -= evictedValue & 0xFFFF;
+            this.fifoHead = (this.fifoHead + 1) % this.fifoKeys.length;
+            this.fifoSize--;
+        }
+
+        this.slab(start).put((int) (start % SLAB_SIZE), record);
+        long value = start << 16 | record.length;
+        this.indexPut(key, value);
+        this.fifoPush(key, value);
+        this.liveBytes += record.length;
+        this.head = end;
+    }
+
+    private void fifoPush(long key, long value) {
+        if (this.fifoSize == this.fifoKeys.length) {
+            long[] keys = new long[this.fifoKeys.length * 2];
+            long[] values = new long[keys.length];
+            for (int i = 0; i < this.fifoSize; i++) {
+                keys[i] = this.fifoKeys[(this.fifoHead + i) % this.fifoKeys.length];
+                values[i] = this.fifoValues[(this.fifoHead + i) % this.fifoKeys.length];
+            }
+            this.fifoKeys = keys;
+            this.fifoValues = values;
+            this.fifoHead = 0;
+        }
+        int tail = (this.fifoHead + this.fifoSize) % this.fifoKeys.length;
+        this.fifoKeys[tail] = key;
+        this.fifoValues[tail] = value;
+        this.fifoSize++;
+    }
+
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32) & (this.indexKeys.length - 1);
+    }
+
+    private long indexGet(long key) {
+        int mask = this.indexKeys.length - 1;
+        for (int slot = this.slotOf(key); ; slot = (slot + 1) & mask) {
+            long existing = this.indexKeys[slot];
+            if (existing == key) return this.indexValues[slot];
+            if (existing == EMPTY) return EMPTY;
+        }
+    }
+
+    private void indexPut(long key, long value) {
+        if ((this.indexSize + 1) * 2 > this.indexKeys.length) this.indexResize();
+        int mask = this.indexKeys.length - 1;
+        for (int slot = this.slotOf(key); ; slot = (slot + 1) & mask) {
+            long existing = this.indexKeys[slot];
+            if (existing == key || existing == EMPTY) {
+                if (existing == EMPTY) this.indexSize++;
+                this.indexKeys[slot] = key;
+                this.indexValues[slot] = value;
+                return;
+            }
+        }
+    }
+
+    private void indexRemove(long key) {
+        int mask = this.indexKeys.length - 1;
+        int slot = this.slotOf(key);
+        while (this.indexKeys[slot] != key) {
+            if (this.indexKeys[slot] == EMPTY) return;
+            slot = (slot + 1) & mask;
+        }
+        // Backward shift deletion, so linear probing never needs tombstones
+        int hole = slot;
+        for (int next = (hole + 1) & mask; this.indexKeys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = this.slotOf(this.indexKeys[next]);
+            boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+            if (movable) {
+                this.indexKeys[hole] = this.indexKeys[next];
+                this.indexValues[hole] = this.indexValues[next];
+                hole = next;
+            }
+        }
+        this.indexKeys[hole] = EMPTY;
+        this.indexSize--;
+    }
+
+    private void indexResize() {
+        long[] keys = this.indexKeys;
+        long[] values = this.indexValues;
+        this.indexKeys = new long[keys.length * 2];
+        this.indexValues = new long[keys.length * 2];
+        Arrays.fill(this.indexKeys, EMPTY);
+        this.indexSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) this.indexPut(keys[i], values[i]);
+        }
+    }
+
+    static byte[] encode(CachedChunkData data) {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_RECORD_BYTES);
+
+        int[] ground = new int[COLUMNS];
+        boolean water = false;
+        for (int i = 0; i < COLUMNS; i++) {
+            ground[i] = data.groundHeight(i >> 4, i & 0xF);
+            water |= data.waterHeight(i >> 4, i & 0xF) > ground[i];
+            int previous = i == 0 ? 0 : ground[(i & 0xF) == 0 ? i - 16 : i - 1];
+            putVarInt(buffer, zigzag(ground[i] - previous));
+        }
+
+        buffer.put((byte) (water ? 1 : 0));
+        if (water) {
+            for (int i = 0; i < COLUMNS; i++) {
+                putVarInt(buffer, Math.max(0, data.waterHeight(i >> 4, i & 0xF) - ground[i]));
+            }
+        }
+
+        byte[] treeCover = data.getCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, TreeCoverBaker.FALLBACK_TREE_DENSITY);
+        boolean uniform = true;
+        for (int i = 1; i < COLUMNS && uniform; i++) {
+            uniform = treeCover[i] == treeCover[0];
+        }
+        buffer.put((byte) (uniform ? 0 : 1));
+        if (uniform) {
+            buffer.put(treeCover[0]);
+        } else {
+            buffer.put(treeCover, 0, COLUMNS);
+        }
+
+        int[] localPalette = new int[255];
+        int paletteSize = 0;
+        byte[] indices = new byte[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            BlockState state = data.surfaceBlock(i >> 4, i & 0xF);
+            if (state == null) continue;
+            int id = PALETTE.id(state);
+            int local = 0;
+            while (local < paletteSize && localPalette[local] != id) local++;
+            if (local == paletteSize) {
+                if (paletteSize == localPalette.length) continue; // Cannot happen with the default OSM config
+                localPalette[paletteSize++] = id;
+            }
+            indices[i] = (byte) (local + 1);
+        }
+        putVarInt(buffer, paletteSize);
+        for (int i = 0; i < paletteSize; i++) {
+            putVarInt(buffer, localPalette[i]);
+        }
+        if (paletteSize > 0) buffer.put(indices);
+
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    static CachedChunkData decode(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        CachedChunkData.Builder builder = CachedChunkData.builder();
+
+        int[] ground = new int[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            int previous = i == 0 ? 0 : ground[(i & 0xF) == 0 ? i - 16 : i - 1];
+            ground[i] = previous + unzigzag(getVarInt(buffer));
+            builder.surfaceHeight(i >> 4, i & 0xF, ground[i]);
+        }
+
+        if (buffer.get() != 0) {
+            for (int i = 0; i < COLUMNS; i++) {
+                int depth = getVarInt(buffer);
+                if (depth > 0) builder.updateWaterDepth(i >> 4, i & 0xF, depth);
+            }
+        }
+
+        byte[] treeCover = new byte[COLUMNS];
+        if (buffer.get() == 0) {
+            Arrays.fill(treeCover, buffer.get());
+        } else {
+            buffer.get(treeCover);
+        }
+        builder.putCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, treeCover);
+
+        BlockState[] palette = new BlockState[getVarInt(buffer)];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = PALETTE.state(getVarInt(buffer));
+        }
+        if (palette.length > 0) {
+            BlockState[] surfaceBlocks = builder.surfaceBlocks();
+            for (int i = 0; i < COLUMNS; i++) {
+                int index = buffer.get() & 0xFF;
+                if (index != 0) surfaceBlocks[i] = palette[index - 1];
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    private static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * JVM-wide ids of the surface block states, so records only store small integers.
+     * There are only a few dozen distinct surface blocks in the OSM configuration.
+     */
+    private static final class Palette {
+
+        private final Map<BlockState, Integer> ids = new ConcurrentHashMap<>();
+        private volatile BlockState[] states = new BlockState[0];
+
+        int id(BlockState state) {
+            Integer id = this.ids.get(state);
+            return id != null ? id : this.register(state);
+        }
+
+        private synchronized int register(BlockState state) {
+            Integer id = this.ids.get(state);
+            if (id != null) return id;
+            BlockState[] states = Arrays.copyOf(this.states, this.states.length + 1);
+            states[states.length - 1] = state;
+            this.states = states; // Publish the state before its id
+            this.ids.put(state, states.length - 1);
+            return states.length - 1;
+        }
+
+        BlockState state(int id) {
+            return this.states[id];
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package de.btegermany.terraplusminus.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.buildtheearth.terraminusminus.dataset.IScalarDataset;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorPipelines;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers "at which height would a player stand here", e.g. for {@code /tpll}, without loading or generating the chunk.
+ * <p>
+ * Heights come from the {@link HeightmapCache}, then from the chunk data the {@link TerrainDataService} has in memory or in its store,
+ * and only then from the elevation dataset. Dataset samples are kept in a small cache keyed by a geohash of the sampled place,
+ * precise to about a meter, so repeated teleports to the same coordinates do not hit the network again.
+ */
+public final class ElevationQueryService {
+
+    private static final int GEOHASH_BITS = 26; // Per axis, about 0.6 m of longitude at the equator
+
+    private final TerrainDataService dataService;
+    private final Cache<Long, Double> samples = CacheBuilder.newBuilder()
+            .expireAfterAccess(30L, TimeUnit.MINUTES)
+            .maximumSize(4096)
+            .build();
+
+    ElevationQueryService(@NotNull TerrainDataService dataService) {
+        this.dataService = dataService;
+    }
+
+    /**
+     * Gets the height a player would stand at on the surface (ground or water) of a column.
+     *
+     * @param blockX  the x block coordinate
+     * @param blockZ  the z block coordinate
+     * @param yOffset the terrain offset of the world
+     * @return the y coordinate right above the surface, already completed if the height is cached.
+     * Fails if the place is outside of the projection or the dataset has no elevation there.
+     */
+    @NotNull
+    public CompletableFuture<Double> standingHeight(double blockX, double blockZ, int yOffset) {
+        int x = (int) Math.floor(blockX);
+        int z = (int) Math.floor(blockZ);
+        int height = this.dataService.getHeights().height(x, z, false);
+        if (height == HeightmapCache.MISSING) {
+            CachedChunkData data = this.dataService.getIfCached(new ChunkPos(x >> 4, z >> 4)); // Also fills the heightmap cache
+            if (data != null) height = data.surfaceHeight(x & 15, z & 15);
+        }
+        if (height != HeightmapCache.MISSING) {
+            return CompletableFuture.completedFuture(height + 1.0 + yOffset);
+        }
+        return this.sample(blockX, blockZ).thenApply(elevation -> Math.floor(elevation) + 1.0 + yOffset);
+    }
+
+    private CompletableFuture<Double> sample(double blockX, double blockZ) {
+        double[] geo;
+        try {
+            geo = this.dataService.getProjectionGrid().toGeo(blockX, blockZ);
+        } catch (OutOfProjectionBoundsException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long geohash = geohash(geo[0], geo[1]);
+        Double cached = this.samples.getIfPresent(geohash);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+
+        return this.dataService.getDatasets().<IScalarDataset>getCustom(EarthGeneratorPipelines.KEY_DATASET_HEIGHTS)
+                .getAsync(geo[0], geo[1])
+                .thenApply(elevation -> {
+                    if (Double.isNaN(elevation)) throw new IllegalStateException("No elevation data at " + geo[1] + ", " + geo[0]);
+                    this.samples.put(geohash, elevation);
+                    return elevation;
+                });
+    }
+
+    /**
+     * Interleaves the bits of the quantized longitude and latitude, so nearby places share their leading bits.
+     */
+    static long geohash(double longitude, double latitude) {
+        long lon = quantize((longitude + 180.0) / 360.0);
+        long lat = quantize((latitude + 90.0) / 180.0);
+        long hash = 0L;
+        for (int bit = GEOHASH_BITS - 1; bit >= 0; bit--) {
+            hash = hash << 2 | (lon >>> bit & 1L) << 1 | lat >>> bit & 1L;
+        }
+        return hash;
+    }
+
+    private static long quantize(double fraction) {
+        long max = (1L << GEOHASH_BITS) - 1;
+        return Math.max(0L, Math.min(max, (long) (fraction * (1L << GEOHASH_BITS))));
+    }
+
+}
@@ -0,0 +1,140 @@
+package de.btegermany.terraplusminus.data;
+
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ground and surface heights of chunks, kept long after their full {@link CachedChunkData} has been evicted.
+ * <p>
+ * Heights are what spawn search, structure placement and other plugins ask the generator for, way more often than
+ * for whole chunks. Each chunk only takes two {@code short[256]}, so many more chunks fit than in the full data cache.
+ * <p>
+ * The table uses open addressing on the packed chunk coordinates, with linear probing over a window of {@value #PROBES} slots.
+ * When the window is full, its oldest entry is overwritten in place, so there are no tombstones and lookups never allocate.
+ * Height arrays are reused on overwrite. Readers are optimistic and only lock if a write raced with them.
+ */
+public final class HeightmapCache {
+
+    /**
+     * Returned by {@link #height(int, int, boolean)} when the chunk is not cached.
+     */
+    public static final int MISSING = Integer.MIN_VALUE;
+
+    private static final int PROBES = 8;
+    private static final long EMPTY = Long.MIN_VALUE; // Not a valid key, chunk coordinates never reach Integer.MIN_VALUE
+
+    private final int mask;
+    private final long[] keys;
+    private final long[] ages;
+    private final short[][] ground;
+    private final short[][] surface;
+    private final StampedLock lock = new StampedLock();
+    private long clock; // guarded by lock
+
+    /**
+     * @param maxChunks the maximum number of chunks to keep, rounded up to a power of two
+     */
+    public HeightmapCache(int maxChunks) {
+        int capacity = Integer.highestOneBit(Math.max(PROBES, maxChunks) - 1) << 1;
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.ages = new long[capacity];
+        this.ground = new short[capacity][];
+        this.surface = new short[capacity][];
+        Arrays.fill(this.keys, EMPTY);
+    }
+
+    private static long key(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * Stores the heights of a chunk, replacing the oldest chunk of its probe window if needed.
+     *
+     * @param chunkX the chunk's x coordinate
+     * @param chunkZ the chunk's z coordinate
+     * @param data   the chunk's data
+     */
+    public void put(int chunkX, int chunkZ, @NotNull CachedChunkData data) {
+        long key = key(chunkX, chunkZ);
+        int start = hash(key);
+        long stamp = this.lock.writeLock();
+        try {
+            int slot = -1;
+            for (int i = 0; i < PROBES; i++) {
+                int candidate = (start + i) & this.mask;
+                long existing = this.keys[candidate];
+                if (existing == key || existing == EMPTY) {
+                    slot = candidate;
+                    break;
+                }
+                if (slot < 0 || this.ages[candidate] < this.ages[slot]) slot = candidate;
+            }
+            if (this.ground[slot] == null) {
+                this.ground[slot] = new short[256];
+                this.surface[slot] = new short[256];
+            }
+            short[] ground = this.ground[slot];
+            short[] surface = this.surface[slot];
+            for (int x = 0; x < 16; x++) {
+                for (int z = 0; z < 16; z++) {
+                    ground[x << 4 | z] = clamp(data.groundHeight(x, z));
+                    surface[x << 4 | z] = clamp(data.surfaceHeight(x, z));
+                }
+            }
+            this.keys[slot] = key;
+            this.ages[slot] = ++this.clock;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    private static short clamp(int height) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, height));
+    }
+
+    /**
+     * Gets the height of a column, without allocating.
+     *
+     * @param blockX the column's x block coordinate
+     * @param blockZ the column's z block coordinate
+     * @param ground true for the ground height, false for the surface height (including water)
+     * @return the height, without any y offset, or {@link #MISSING} if the chunk is not cached
+     */
+    public int height(int blockX, int blockZ, boolean ground) {
+        long stamp = this.lock.tryOptimisticRead();
+        int height = this.read(blockX, blockZ, ground);
+        if (this.lock.validate(stamp)) return height;
+        stamp = this.lock.readLock();
+        try {
+            return this.read(blockX, blockZ, ground);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    private int read(int blockX, int blockZ, boolean ground) {
+        long key = key(blockX >> 4, blockZ >> 4);
+        int start = hash(key);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (start + i) & this.mask;
+            long existing = this.keys[slot];
+            if (existing == EMPTY) return MISSING;
+            if (existing == key) {
+                short[] heights = ground ? this.ground[slot] : this.surface[slot];
+                // Only null when racing with the first write to the slot, the caller validates and retries
+                return heights == null ? MISSING : heights[(blockX & 15) << 4 | blockZ & 15];
+            }
+        }
+        return MISSING;
+    }
+
+}
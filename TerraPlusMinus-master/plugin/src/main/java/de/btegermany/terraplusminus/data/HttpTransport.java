@@ -0,0 +1,129 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import net.buildtheearth.terraminusminus.TerraConfig;
+import net.buildtheearth.terraminusminus.util.http.Http;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Sets up the HTTP connections terrain data is fetched with, from the {@code http} section of the plugin's configuration.
+ * <p>
+ * With the {@link UpstreamGateway} running, Terra-- only talks to the gateway over loopback, and the gateway's own client holds the
+ * upstream connections: the per-host limits, HTTP version, timeouts and warm-up apply there. Without it, Terra--'s client connects
+ * to the APIs itself, and only the per-host limits and DNS warm-up can be applied to it.
+ * Nothing is configured JVM-wide: system properties would change the connections of every other plugin on the server.
+ * The clients are configured once, when the plugin is enabled, after the gateway is started.
+ */
+public final class HttpTransport {
+
+    private static final Pattern ENTRY_PATTERN = Pattern.compile("\\s*(\\d+)\\s*:\\s*(\\S+)\\s*");
+
+    private HttpTransport() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Applies the per-host limits of concurrent requests from {@code http.max_concurrent_requests} to Terra--, if there are any.
+     * The base URLs are routed through the gateway like the dataset URLs are, so that they still match:
+     * Terra-- then sends no more requests to the gateway for a host than the gateway sends upstream, see {@link #hostLimits()}.
+     */
+    public static void configure() {
+        List<String> entries = validEntries();
+        if (!entries.isEmpty()) {
+            TerraConfig.http.maxConcurrentRequests = entries.stream()
+                    .map(entry -> {
+                        Matcher matcher = ENTRY_PATTERN.matcher(entry);
+                        matcher.matches();
+                        return matcher.group(1) + ": " + UpstreamGateway.route(matcher.group(2));
+                    })
+                    .toArray(String[]::new);
+        }
+        Http.configChanged();
+    }
+
+    /**
+     * The per-host limits of concurrent requests from {@code http.max_concurrent_requests}, the lowest one if a host has several entries.
+     *
+     * @return the most requests in flight, by host
+     */
+    static Map<String, Integer> hostLimits() {
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        for (String entry : Terraplusminus.config.getStringList("http.max_concurrent_requests")) {
+            Matcher matcher = ENTRY_PATTERN.matcher(entry);
+            if (!matcher.matches()) continue; // Reported by configure()
+            URI url = baseUrl(matcher.group(2));
+            if (url != null) limits.merge(url.getHost(), Math.max(1, Integer.parseInt(matcher.group(1))), Math::min);
+        }
+        return limits;
+    }
+
+    /**
+     * Connects to the configured APIs in the background, so the first chunks do not wait for DNS, nor for the TLS handshake
+     * when the gateway is running. Does nothing if {@code http.warmup} is disabled.
+     */
+    public static void warmUp() {
+        if (!Terraplusminus.config.getBoolean("http.warmup", true)) return;
+        List<URI> urls = baseUrls();
+        if (urls.isEmpty() || UpstreamGateway.warmUp(urls)) return;
+
+        // Terra--'s connections cannot be opened from here, resolve the hosts at least
+        Set<String> hosts = new LinkedHashSet<>();
+        urls.forEach(url -> hosts.add(url.getHost()));
+
+        Thread thread = new Thread(() -> {
+            for (String host : hosts) {
+                try {
+                    InetAddress.getAllByName(host); // Cached by the JVM for the next lookups
+                } catch (UnknownHostException e) {
+                    Terraplusminus.instance.getComponentLogger().warn("Could not resolve {}, terrain data from it will not load", host);
+                }
+            }
+        }, "Terraplusminus HTTP warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static List<URI> baseUrls() {
+        List<URI> urls = new ArrayList<>();
+        for (String entry : Terraplusminus.config.getStringList("http.max_concurrent_requests")) {
+            Matcher matcher = ENTRY_PATTERN.matcher(entry);
+            if (!matcher.matches()) continue; // Reported by configure()
+            URI url = baseUrl(matcher.group(2));
+            if (url != null) urls.add(url);
+        }
+        return urls;
+    }
+
+    @Nullable
+    private static URI baseUrl(String url) {
+        try {
+            URI uri = URI.create(url);
+            return uri.getHost() == null ? null : uri;
+        } catch (IllegalArgumentException e) {
+            return null; // Not a plain URL
+        }
+    }
+
+    private static List<String> validEntries() {
+        return Terraplusminus.config.getStringList("http.max_concurrent_requests").stream()
+                .filter(entry -> {
+                    if (ENTRY_PATTERN.matcher(entry).matches()) return true;
+                    Terraplusminus.instance.getComponentLogger().warn("Ignoring http.max_concurrent_requests entry '{}', expected '<requests>: <base URL>'", entry);
+                    return false;
+                })
+                .toList();
+    }
+
+}
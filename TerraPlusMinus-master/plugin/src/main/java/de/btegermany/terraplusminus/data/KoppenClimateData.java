@@ -0,0 +1,98 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import net.buildtheearth.terraminusminus.dataset.builtin.AbstractBuiltinDataset;
+import net.buildtheearth.terraminusminus.util.RLEByteArray;
+import net.daporkchop.lib.common.reference.cache.Cached;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static net.daporkchop.lib.common.util.PValidation.checkState;
+
+/**
+ * The Koppen climate classification of the whole world, at a resolution of 1/120 degree.
+ * <p>
+ * The map is read from a {@link KoppenTileFile} in the plugin directory, converted from the bundled resource on first use.
+ * If that file cannot be used, the bundled resource is decoded into memory instead.
+ */
+public class KoppenClimateData extends AbstractBuiltinDataset {
+    protected static final int COLUMNS = 43200;
+    protected static final int ROWS = 21600;
+
+    private static KoppenTileFile tiles; // guarded by KoppenClimateData.class
+    private static boolean tilesOpened; // guarded by KoppenClimateData.class
+
+    @Nullable private final KoppenTileFile tileFile;
+    @Nullable private final RLEByteArray data;
+
+    public KoppenClimateData() {
+        this(true);
+    }
+
+    /**
+     * @param tiled whether to use the tiled file, or to decode the bundled resource into memory
+     */
+    KoppenClimateData(boolean tiled) {
+        super(COLUMNS, ROWS);
+        this.tileFile = tiled ? sharedTiles() : null;
+        this.data = this.tileFile == null ? CACHE.get() : null;
+    }
+
+    private static synchronized KoppenTileFile sharedTiles() {
+        if (!tilesOpened) {
+            tiles = KoppenTileFile.openOrConvert(Terraplusminus.instance.getDataPath().resolve("koppen_map.tiles"), COLUMNS, ROWS);
+            tilesOpened = true;
+        }
+        return tiles;
+    }
+
+    private static final Cached<RLEByteArray> CACHE = Cached.global((Supplier<RLEByteArray>) () -> {
+        RLEByteArray.Builder builder = RLEByteArray.builder();
+
+        try (InputStream compressedStream = KoppenClimateData.class.getResourceAsStream("/koppen_map.gz")) {
+            checkState(compressedStream != null, "Missing internal resource for Koppen biome dataset");
+            InputStream is = new GZIPInputStream(compressedStream);
+            byte[] buffer = new byte[4096];
+            int readyBytes;
+            while ((readyBytes = is.read(buffer, 0, buffer.length)) != -1) {
+                for (int i = 0; i < readyBytes; i++) {
+                    builder.append(buffer[i]);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load internal resource for Koppen dataset", e);
+        }
+
+        return builder.build();
+    });
+
+
+    @Override
+    protected double get(double xc, double yc) {
+        int x = (int) Math.floor(xc);
+        int y = (int) Math.floor(yc);
+
+        if (x >= COLUMNS || x < 0 || y >= ROWS || y < 0)
+            return 0;
+
+        return this.tileFile != null ? this.tileFile.get(x, y) : this.data.get(y * COLUMNS + x);
+    }
+
+    /**
+     * Looks up the climates of several places at once, without the asynchronous machinery of the dataset API.
+     *
+     * @param longitudes the longitude of each place
+     * @param latitudes  the latitude of each place
+     * @param climates   receives the Koppen climate code of each place, 0 (ocean) outside of the map
+     */
+    public void getClimates(double[] longitudes, double[] latitudes, byte[] climates) {
+        for (int i = 0; i < climates.length; i++) {
+            climates[i] = (byte) this.get((longitudes[i] + 180.0d) * COLUMNS / 360.0d, (90.0d - latitudes[i]) * ROWS / 180.0d);
+        }
+    }
+
+}
@@ -0,0 +1,177 @@
+package de.btegermany.terraplusminus.data;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * The Koppen climate map, converted once from the bundled {@code koppen_map.gz} into a tiled file that is memory mapped.
+ * <p>
+ * The map is cut in tiles of {@value #TILE_SIZE}x{@value #TILE_SIZE} cells. Tiles where every cell has the same climate,
+ * like most of the oceans, are not stored: their value is kept in the tile table instead.
+ * The operating system pages tiles in as they are used, so only the parts of the world that are generated take memory,
+ * and a lookup is a table read plus at most one byte read from the mapping.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ *   int     magic
+ *   int     format version
+ *   int     columns
+ *   int     rows
+ *   long[]  tile table, row-major: the offset of the tile's cells in the file, or -(value + 1) for uniform tiles
+ *   byte[]  cells of the stored tiles, row-major within each tile
+ * </pre>
+ */
+final class KoppenTileFile {
+
+    static final int TILE_SIZE = 256;
+    private static final int TILE_SHIFT = 8;
+    private static final int MAGIC = 0x4B505054; // "KPPT"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES * 4;
+
+    private final int columns;
+    private final int rows;
+    private final int tilesX;
+    private final long[] table;
+    private final MappedByteBuffer mapping;
+
+    private KoppenTileFile(int columns, int rows, long[] table, MappedByteBuffer mapping) {
+        this.columns = columns;
+        this.rows = rows;
+        this.tilesX = tileCount(columns);
+        this.table = table;
+        this.mapping = mapping;
+    }
+
+    private static int tileCount(int cells) {
+        return (cells + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Opens the tiled map, converting it from the bundled resource first if the file is missing or outdated.
+     *
+     * @param file    the tiled file
+     * @param columns the width of the map
+     * @param rows    the height of the map
+     * @return the opened map, or null if it could neither be opened nor converted
+     */
+    @Nullable
+    static KoppenTileFile openOrConvert(@NotNull Path file, int columns, int rows) {
+        try {
+            KoppenTileFile tiles = open(file, columns, rows);
+            if (tiles != null) return tiles;
+            long start = System.nanoTime();
+            Terraplusminus.instance.getComponentLogger().info("Converting the Koppen climate map to {}, this only happens once", file);
+            convert(file, columns, rows);
+            Terraplusminus.instance.getComponentLogger().info("Converted the Koppen climate map in {} s", (System.nanoTime() - start) / 1_000_000_000L);
+            return open(file, columns, rows);
+        } catch (IOException | RuntimeException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to use the tiled Koppen climate map {}, decoding it in memory instead", file, e);
+            return null;
+        }
+    }
+
+    @Nullable
+    private static KoppenTileFile open(Path file, int columns, int rows) throws IOException {
+        if (!Files.exists(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapping.capacity() < HEADER_SIZE
+                    || mapping.getInt(0) != MAGIC || mapping.getInt(4) != FORMAT_VERSION
+                    || mapping.getInt(8) != columns || mapping.getInt(12) != rows) {
+                return null;
+            }
+            long[] table = new long[tileCount(columns) * tileCount(rows)];
+            mapping.slice(HEADER_SIZE, table.length * Long.BYTES).asLongBuffer().get(table);
+            return new KoppenTileFile(columns, rows, table, mapping); // The mapping stays valid once the channel is closed
+        }
+    }
+
+    private static void convert(Path file, int columns, int rows) throws IOException {
+        int tilesX = tileCount(columns);
+        int tilesZ = tileCount(rows);
+        long[] table = new long[tilesX * tilesZ];
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path cells = file.resolveSibling(file.getFileName() + ".cells.tmp");
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+        // First the cells of the stored tiles, one band of tiles at a time, then the header and table in front of them
+        long offset = HEADER_SIZE + (long) table.length * Long.BYTES;
+        byte[] band = new byte[TILE_SIZE * columns];
+        byte[] tile = new byte[TILE_SIZE * TILE_SIZE];
+        try (InputStream compressed = KoppenClimateData.class.getResourceAsStream("/koppen_map.gz")) {
+            if (compressed == null) throw new IOException("Missing internal resource for Koppen biome dataset");
+            try (InputStream input = new GZIPInputStream(compressed, 1 << 16);
+                 OutputStream output = new BufferedOutputStream(Files.newOutputStream(cells), 1 << 16)) {
+                for (int tileZ = 0; tileZ < tilesZ; tileZ++) {
+                    int bandRows = Math.min(TILE_SIZE, rows - tileZ * TILE_SIZE);
+                    Arrays.fill(band, (byte) 0);
+                    if (input.readNBytes(band, 0, bandRows * columns) != bandRows * columns) {
+                        throw new IOException("The bundled Koppen climate map is truncated");
+                    }
+                    for (int tileX = 0; tileX < tilesX; tileX++) {
+                        boolean uniform = true;
+                        for (int z = 0; z < TILE_SIZE; z++) {
+                            for (int x = 0; x < TILE_SIZE; x++) {
+                                int column = tileX * TILE_SIZE + x;
+                                byte value = z < bandRows && column < columns ? band[z * columns + column] : 0;
+                                tile[z << TILE_SHIFT | x] = value;
+                                uniform &= value == tile[0];
+                            }
+                        }
+                        if (uniform) {
+                            table[tileZ * tilesX + tileX] = -((tile[0] & 0xFF) + 1L);
+                        } else {
+                            table[tileZ * tilesX + tileX] = offset;
+                            output.write(tile);
+                            offset += tile.length;
+                        }
+                    }
+                }
+            }
+        }
+
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16);
+             DataOutputStream output = new DataOutputStream(stream)) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(columns);
+            output.writeInt(rows);
+            for (long entry : table) {
+                output.writeLong(entry);
+            }
+            Files.copy(cells, output);
+        } finally {
+            Files.deleteIfExists(cells);
+        }
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the climate code of a cell, 0 outside of the map
+     */
+    int get(int x, int y) {
+        if (x < 0 || x >= this.columns || y < 0 || y >= this.rows) return 0;
+        long entry = this.table[(y >> TILE_SHIFT) * this.tilesX + (x >> TILE_SHIFT)];
+        if (entry < 0) return (int) (-entry - 1);
+        return this.mapping.get((int) entry + ((y & (TILE_SIZE - 1)) << TILE_SHIFT | x & (TILE_SIZE - 1))) & 0xFF;
+    }
+
+}
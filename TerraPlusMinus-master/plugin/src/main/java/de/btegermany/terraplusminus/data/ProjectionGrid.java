@@ -0,0 +1,156 @@
+package de.btegermany.terraplusminus.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Converts Minecraft coordinates to geographic ones faster than the projection, by interpolating between exact values.
+ * <p>
+ * The world is split into cells of {@value #CELL_SIZE} blocks. The first time a cell is used, the corners are projected exactly
+ * and cached, and the conversions inside the cell are bilinear interpolations of the corners. The projection is smooth within
+ * a face of the icosahedron, but not across face edges and cuts of the net, so each cell is checked when it is built:
+ * a lattice of points inside it is projected exactly too, and if any of them is off by more than {@value #MAX_ERROR_DEGREES} degrees
+ * (about a centimeter) or out of bounds, the cell always uses the exact projection. The error is thus bounded at the lattice points,
+ * {@value #CHECK_SPACING} blocks apart; a kink falling between them could go slightly beyond it.
+ * <p>
+ * Safe to use from any thread.
+ */
+public final class ProjectionGrid {
+
+    public static final double MAX_ERROR_DEGREES = 1.0E-7;
+
+    private static final int CELL_SHIFT = 6;
+    private static final int CELL_SIZE = 1 << CELL_SHIFT;
+    private static final int CHECK_SPACING = CELL_SIZE / 4;
+    private static final double[] EXACT = new double[0]; // Marks cells that are not interpolated
+
+    private final GeographicProjection projection;
+    private final Cache<Long, double[]> cells = CacheBuilder.newBuilder()
+            .expireAfterAccess(5L, TimeUnit.MINUTES)
+            .maximumSize(16384)
+            .build();
+    private final LongAdder interpolatedCells = new LongAdder();
+    private final LongAdder exactCells = new LongAdder();
+    private final AtomicLong maxErrorBits = new AtomicLong(); // Non-negative doubles order like their bits
+
+    public ProjectionGrid(@NotNull GeographicProjection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Converts Minecraft coordinates to geographic ones.
+     *
+     * @param x the x coordinate
+     * @param z the z coordinate
+     * @return the longitude and latitude
+     * @throws OutOfProjectionBoundsException if the place has no equivalent on Earth
+     */
+    public double @NotNull [] toGeo(double x, double z) throws OutOfProjectionBoundsException {
+        double[] geo = new double[2];
+        if (!this.toGeo(x, z, geo)) throw OutOfProjectionBoundsException.get();
+        return geo;
+    }
+
+    /**
+     * Converts Minecraft coordinates to geographic ones without allocating, for hot loops.
+     *
+     * @param x   the x coordinate
+     * @param z   the z coordinate
+     * @param out receives the longitude and latitude
+     * @return false if the place has no equivalent on Earth, out is then left as it was
+     */
+    public boolean toGeo(double x, double z, double @NotNull [] out) {
+        int cellX = (int) Math.floor(x) >> CELL_SHIFT;
+        int cellZ = (int) Math.floor(z) >> CELL_SHIFT;
+        long key = (long) cellX << 32 | cellZ & 0xFFFFFFFFL;
+        double[] corners = this.cells.getIfPresent(key);
+        if (corners == null) {
+            corners = this.buildCell(cellX, cellZ);
+            this.cells.put(key, corners); // Racing threads build the same cell, no need to synchronize
+        }
+        if (corners == EXACT) {
+            try {
+                double[] geo = this.projection.toGeo(x, z);
+                out[0] = geo[0];
+                out[1] = geo[1];
+                return true;
+            } catch (OutOfProjectionBoundsException e) {
+                return false;
+            }
+        }
+        double fx = (x - ((double) cellX * CELL_SIZE)) / CELL_SIZE;
+        double fz = (z - ((double) cellZ * CELL_SIZE)) / CELL_SIZE;
+        out[0] = interpolate(corners, 0, fx, fz);
+        out[1] = interpolate(corners, 1, fx, fz);
+        return true;
+    }
+
+    /**
+     * @return the largest error measured in the cells that are interpolated, in degrees
+     */
+    public double maxMeasuredError() {
+        return Double.longBitsToDouble(this.maxErrorBits.get());
+    }
+
+    /**
+     * @return the share of the cells built so far that fall back to the exact projection
+     */
+    public double exactCellRatio() {
+        long exact = this.exactCells.sum();
+        long total = exact + this.interpolatedCells.sum();
+        return total == 0 ? 0.0 : (double) exact / total;
+    }
+
+    /**
+     * Projects the corners of a cell and checks that interpolating them is accurate enough.
+     *
+     * @return the longitude and latitude of the corners (x0 z0, x1 z0, x0 z1, x1 z1), or {@link #EXACT}
+     */
+    private double[] buildCell(int cellX, int cellZ) {
+        double x0 = (double) cellX * CELL_SIZE;
+        double z0 = (double) cellZ * CELL_SIZE;
+        double[] corners = new double[8];
+        double maxError = 0.0;
+        try {
+            for (int corner = 0; corner < 4; corner++) {
+                double[] geo = this.projection.toGeo(x0 + (corner & 1) * CELL_SIZE, z0 + (corner >> 1) * CELL_SIZE);
+                corners[corner << 1] = geo[0];
+                corners[corner << 1 | 1] = geo[1];
+            }
+            for (int dx = CHECK_SPACING; dx < CELL_SIZE; dx += CHECK_SPACING) {
+                for (int dz = CHECK_SPACING; dz < CELL_SIZE; dz += CHECK_SPACING) {
+                    double[] geo = this.projection.toGeo(x0 + dx, z0 + dz);
+                    double fx = (double) dx / CELL_SIZE;
+                    double fz = (double) dz / CELL_SIZE;
+                    // Also catches the longitude wrapping around within the cell
+                    maxError = Math.max(maxError, Math.abs(geo[0] - interpolate(corners, 0, fx, fz)));
+                    maxError = Math.max(maxError, Math.abs(geo[1] - interpolate(corners, 1, fx, fz)));
+                }
+            }
+        } catch (OutOfProjectionBoundsException e) {
+            this.exactCells.increment();
+            return EXACT;
+        }
+        if (maxError > MAX_ERROR_DEGREES) {
+            this.exactCells.increment();
+            return EXACT;
+        }
+        this.maxErrorBits.accumulateAndGet(Double.doubleToLongBits(maxError), Math::max);
+        this.interpolatedCells.increment();
+        return corners;
+    }
+
+    private static double interpolate(double[] corners, int axis, double fx, double fz) {
+        double top = corners[axis] + (corners[2 | axis] - corners[axis]) * fx;
+        double bottom = corners[4 | axis] + (corners[6 | axis] - corners[4 | axis]) * fx;
+        return top + (bottom - top) * fz;
+    }
+
+}
@@ -0,0 +1,45 @@
+package de.btegermany.terraplusminus.data;
+
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+
+
+/**
+ * @author Noah Husby
+ */
+
+public class TerraConnector {
+
+    private static final EarthGeneratorSettings bteGeneratorSettings = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS);
+
+    /**
+     * Gets the geographical location from in-game coordinates
+     *
+     * @param x X-Axis in-game
+     * @param z Z-Axis in-game
+     * @return The geographical location (Long, Lat)
+     */
+    public static double[] toGeo(double x, double z) {
+        try {
+            return bteGeneratorSettings.projection().toGeo(x, z);
+        } catch (OutOfProjectionBoundsException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets in-game coordinates from geographical location
+     *
+     * @param lon Geographical Longitude
+     * @param lat Geographic Latitude
+     * @return The in-game coordinates (x, z)
+     */
+    public static double[] fromGeo(double lon, double lat) {
+        try {
+            return bteGeneratorSettings.projection().fromGeo(lon, lat);
+        } catch (OutOfProjectionBoundsException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,247 @@
+package de.btegermany.terraplusminus.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import lombok.Getter;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.ChunkDataLoader;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.generator.GeneratorDatasets;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.transform.OffsetProjectionTransform;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide source of terrain data, shared by every world generator, the tree populator and the commands.
+ * <p>
+ * There is one service per set of generator settings, i.e. per horizontal terrain offset,
+ * so that worlds only differing by their y offset (like linked Multiverse worlds) share their data.
+ * Concurrent requests for the same chunk are merged into a single upstream fetch,
+ * requests for neighbouring chunks are batched by {@link ChunkRequestBatcher},
+ * and fetched chunks are written through to the persistent {@link ChunkDataStore}.
+ * <p>
+ * In memory, recently used chunks are kept as they are in a small heap cache, which also holds pending fetches.
+ * Everything that was loaded goes to a {@link CompactChunkCache} as well, encoded off-heap within a byte budget,
+ * and to the {@link HeightmapCache} that answers height queries, also used by the {@link ElevationQueryService}.
+ * Per-block conversions to geographic coordinates go through the shared {@link ProjectionGrid}.
+ * <p>
+ * Services are reference counted: each consumer {@link #acquire(int, int) acquires} one and {@link #release() releases} it
+ * when it no longer needs it, the last release dropping the cached data.
+ */
+public final class TerrainDataService {
+
+    private static final Map<String, TerrainDataService> SERVICES = new HashMap<>(); // guarded by itself
+
+    @Getter private final String key;
+    @Getter private final EarthGeneratorSettings settings;
+    @Getter private final GeneratorDatasets datasets;
+    @Getter private final ProjectionGrid projectionGrid;
+    private final Cache<ChunkPos, CompletableFuture<CachedChunkData>> cache;
+    private final ChunkRequestBatcher batcher;
+    @Getter private final HeightmapCache heights;
+    @Getter private final CompactChunkCache compactCache;
+    @Getter private final ElevationQueryService elevations;
+    @Nullable private final ChunkDataStore store;
+    private int references; // guarded by SERVICES
+
+    private TerrainDataService(String key, int xOffset, int zOffset) {
+        this.key = key;
+        EarthGeneratorSettings settings = EarthGeneratorSettings.parse(EarthGeneratorSettings.BTE_DEFAULT_SETTINGS);
+        GeographicProjection projection = new OffsetProjectionTransform(settings.projection(), xOffset, zOffset);
+        this.settings = settings.withProjection(projection);
+        this.datasets = new GeneratorDatasets(this.settings);
+        this.projectionGrid = new ProjectionGrid(projection);
+
+        if (Terraplusminus.config.getBoolean("chunk_data_store", true)) {
+            // Chunks generated from other datasets must not be served. The original configurations are hashed, the routed ones change with the ports
+            Path dataPath = Terraplusminus.instance.getDataPath();
+            this.store = ChunkDataStore.open(dataPath.resolve("chunk_data").resolve(key + "_datasets_" + ChunkDataStore.datasetsHash(dataPath)));
+        } else {
+            this.store = null;
+        }
+
+        this.heights = new HeightmapCache(Terraplusminus.config.getInt("height_cache_chunks", 16384));
+        long budgetMegabytes = Terraplusminus.config.getLong("terrain_cache_mb", 0L);
+        this.compactCache = new CompactChunkCache(budgetMegabytes > 0 ? budgetMegabytes << 20 : CompactChunkCache.defaultBudget());
+        GenerationMetrics.registerCompactCache(this.compactCache);
+        this.elevations = new ElevationQueryService(this);
+
+        ChunkDataLoader loader = new ChunkDataLoader(this.settings);
+        this.batcher = new ChunkRequestBatcher(
+                loader::load,
+                Terraplusminus.config.getInt("batching.tile_size_chunks", 16),
+                Terraplusminus.config.getLong("batching.window_millis", 5L)
+        );
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterAccess(1L, TimeUnit.MINUTES)
+                .maximumSize(512)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Acquires a reference to the service for the given horizontal terrain offset, creating it if needed.
+     *
+     * @param xOffset the terrain offset on the x axis
+     * @param zOffset the terrain offset on the z axis
+     * @return the shared service
+     */
+    public static TerrainDataService acquire(int xOffset, int zOffset) {
+        String key = "offset_" + xOffset + "_" + zOffset;
+        synchronized (SERVICES) {
+            TerrainDataService service = SERVICES.computeIfAbsent(key, k -> new TerrainDataService(k, xOffset, zOffset));
+            service.references++;
+            return service;
+        }
+    }
+
+    /**
+     * Acquires a reference to the service for the terrain offset set in the plugin's configuration.
+     *
+     * @return the shared service
+     */
+    public static TerrainDataService acquireDefault() {
+        return acquire(Terraplusminus.config.getInt("terrain_offset.x"), Terraplusminus.config.getInt("terrain_offset.z"));
+    }
+
+    /**
+     * @return the statistics of the in-memory caches of all services
+     */
+    public static CacheStats cacheStats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        synchronized (SERVICES) {
+            for (TerrainDataService service : SERVICES.values()) {
+                stats = stats.plus(service.cache.stats());
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Releases a reference acquired with {@link #acquire(int, int)}.
+     */
+    public void release() {
+        synchronized (SERVICES) {
+            if (--this.references > 0) return;
+            SERVICES.remove(this.key);
+        }
+        this.cache.invalidateAll();
+        this.compactCache.clear();
+        GenerationMetrics.unregisterCompactCache(this.compactCache);
+    }
+
+    /**
+     * Gets the data of a chunk if it is cached in memory, off-heap or in the persistent store, without fetching it.
+     *
+     * @param pos the chunk position
+     * @return the data, or null if it is not available yet
+     */
+    @Nullable
+    public CachedChunkData getIfCached(@NotNull ChunkPos pos) {
+        CompletableFuture<CachedChunkData> future = this.cache.getIfPresent(pos);
+        if (future != null) {
+            return future.isDone() && !future.isCompletedExceptionally() ? future.getNow(null) : null;
+        }
+        return this.loadEvicted(pos);
+    }
+
+    /**
+     * Gets the data of a chunk, fetching it if it is neither cached nor stored and the upstream request budget allows it.
+     *
+     * @param pos     the chunk position
+     * @param reserve how many request slots to leave to other consumers, see {@link AdaptiveRateLimiter#hasCapacity(int)}
+     * @return the pending or completed data, or null if it could not be requested right now
+     */
+    @Nullable
+    public CompletableFuture<CachedChunkData> request(@NotNull ChunkPos pos, int reserve) {
+        CompletableFuture<CachedChunkData> future = this.cache.getIfPresent(pos);
+        if (future != null) return future;
+
+        CachedChunkData stored = this.loadEvicted(pos);
+        if (stored != null) return CompletableFuture.completedFuture(stored);
+
+        // The slot itself is taken by the batcher right before fetching, the requests queued there will take theirs first
+        if (!AdaptiveRateLimiter.hasCapacity(reserve + ChunkRequestBatcher.queued())) return null;
+        // Not through a loading cache, which would count the lookup above a second time as a miss
+        CompletableFuture<CachedChunkData> loading = new CompletableFuture<>();
+        future = this.cache.asMap().putIfAbsent(pos, loading);
+        if (future != null) return future; // Concurrent loads of the same chunk are merged
+        this.fetch(pos).whenComplete((data, error) -> {
+            // Do not keep failures around, the next request should try again
+            if (error != null || data == null) this.cache.asMap().remove(pos, loading);
+            if (error != null) {
+                loading.completeExceptionally(error);
+            } else {
+                loading.complete(data);
+            }
+        });
+        return loading;
+    }
+
+    private CompletableFuture<CachedChunkData> fetch(ChunkPos pos) {
+        GenerationMetrics.UPSTREAM_FETCHES.increment();
+        long start = System.nanoTime();
+        CompletableFuture<CachedChunkData> future = this.batcher.submit(pos);
+        future.whenComplete((data, error) -> {
+            GenerationMetrics.FETCH_UPSTREAM.recordSince(start);
+            if (error != null || data == null) {
+                GenerationMetrics.UPSTREAM_FAILURES.increment();
+            } else {
+                this.heights.put(pos.x(), pos.z(), data);
+                this.compactCache.put(pos.x(), pos.z(), data);
+            }
+        });
+        if (this.store != null) {
+            // Write-through, on the store's own thread which closeAll() drains
+            future.thenAccept(data -> {
+                if (data != null) this.store.writeAsync(pos, data);
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Makes already known data available without fetching it, e.g. fixtures when running offline.
+     *
+     * @param pos  the chunk position
+     * @param data the data of the chunk
+     */
+    public void put(@NotNull ChunkPos pos, @NotNull CachedChunkData data) {
+        this.cache.put(pos, CompletableFuture.completedFuture(data));
+        this.heights.put(pos.x(), pos.z(), data);
+        this.compactCache.put(pos.x(), pos.z(), data);
+    }
+
+    /**
+     * Loads a chunk that is not in the heap cache anymore, from the compact cache or else from the store.
+     */
+    @Nullable
+    private CachedChunkData loadEvicted(ChunkPos pos) {
+        CachedChunkData data = this.compactCache.get(pos.x(), pos.z());
+        if (data == null && this.store != null) {
+            long start = System.nanoTime();
+            data = this.store.read(pos);
+            if (data != null) {
+                GenerationMetrics.FETCH_STORE.recordSince(start);
+                this.heights.put(pos.x(), pos.z(), data);
+                this.compactCache.put(pos.x(), pos.z(), data);
+            }
+        }
+        if (data != null) {
+            this.cache.put(pos, CompletableFuture.completedFuture(data));
+        }
+        return data;
+    }
+
+}
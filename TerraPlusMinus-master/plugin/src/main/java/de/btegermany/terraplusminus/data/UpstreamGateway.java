@@ -0,0 +1,342 @@
+package de.btegermany.terraplusminus.data;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Loopback relay between Terra-- and the upstream APIs, so that each request goes through the {@link AdaptiveRateLimiter} of its host.
+ * <p>
+ * Terra--'s HTTP client has no hooks, so the dataset configurations are copied to a separate config root with every URL
+ * routed to this gateway, {@code https://host/path} becoming {@code http://127.0.0.1:<port>/https/host/path},
+ * the same way the fixture server does it. Each request then waits for a slot on its host only, and the status code
+ * and Retry-After header of the response are fed back to that host's limiter. A host that throttles us thus does not
+ * hold back the requests to the other ones.
+ * Only the hosts of the routed dataset URLs are relayed to, any other target is answered with 403 (Forbidden),
+ * so that other local processes cannot use the gateway as an open proxy.
+ * <p>
+ * The upstream connections are the gateway's own, so they are configured here rather than in Terra--:
+ * the HTTP version and timeouts come from {@code http}, and {@code http.max_concurrent_requests} caps the requests in flight per host.
+ * With HTTP/2, the requests to a host share one connection; with HTTP/1.1, that cap is also the most connections opened to it.
+ */
+public final class UpstreamGateway implements Closeable {
+
+    private static final Pattern URL_PATTERN = Pattern.compile("(https?)://(?=[^/\\s\"'$]+)");
+    private static final Pattern AUTHORITY_PATTERN = Pattern.compile("https?://([^/\\s\"'$]+)");
+    // Requests replayed by the fixture server carry the host they were recorded from in their path
+    private static final Pattern ROUTED_PATH_PATTERN = Pattern.compile("/https?/([^/]+)/.*");
+    private static final List<String> REQUEST_HEADERS = List.of("User-Agent", "Accept", "If-None-Match", "If-Modified-Since");
+    private static final List<String> RESPONSE_HEADERS = List.of("Content-Type", "ETag", "Last-Modified", "Cache-Control", "Expires", "Retry-After");
+
+    @Nullable private static UpstreamGateway instance;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final Map<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+    private final Set<String> allowedAuthorities = ConcurrentHashMap.newKeySet();
+    private final String target;
+    @Getter private final Path routedConfigRoot;
+
+    private UpstreamGateway(int port) throws IOException {
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            if (port == 0) throw e;
+            Terraplusminus.instance.getComponentLogger().info("Port {} is taken, the upstream gateway uses a free one", port);
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        }
+        this.server = server;
+        // Threads mostly wait for a slot or for the upstream, and Terra-- caps how many requests it sends at once
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "Terraplusminus upstream gateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.client = HttpClient.newBuilder()
+                .version(httpVersion())
+                .connectTimeout(Duration.ofSeconds(Math.max(1, Terraplusminus.config.getInt("http.connect_timeout_seconds", 10))))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(this.executor)
+                .build();
+        this.requestTimeout = Duration.ofSeconds(Math.max(1, Terraplusminus.config.getInt("http.request_timeout_seconds", 60)));
+        HttpTransport.hostLimits().forEach((host, limit) -> this.hostLimits.put(host, new Semaphore(limit, true)));
+        this.target = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+        this.routedConfigRoot = Files.createTempDirectory("terraplusminus-gateway");
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Starts the gateway if {@code http.gateway.enabled} is set, and routes the dataset configurations to it.
+     *
+     * @param configRoot the Terra-- config root holding the dataset configurations to route
+     * @return the config root Terra-- must use instead, or null if requests go straight to the upstream APIs
+     */
+    @Nullable
+    public static synchronized Path start(@NotNull Path configRoot) {
+        if (!Terraplusminus.config.getBoolean("http.gateway.enabled", true)) return null;
+        try {
+            instance = open(configRoot, Terraplusminus.config.getInt("http.gateway.port", 25590));
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().error("Failed to start the upstream gateway, requests will not be limited per host", e);
+            return null;
+        }
+        return instance.routedConfigRoot;
+    }
+
+    /**
+     * Stops the gateway started with {@link #start(Path)}.
+     */
+    public static synchronized void stop() {
+        if (instance == null) return;
+        instance.close();
+        instance = null;
+    }
+
+    /**
+     * Starts a gateway and routes the dataset configurations to it.
+     *
+     * @param configRoot the Terra-- config root holding the dataset configurations to route
+     * @param port       the loopback port to listen on, a free one is used if it is 0 or taken
+     * @return the running gateway, whose {@link #getRoutedConfigRoot() routed config root} Terra-- must use
+     * @throws IOException if the configurations cannot be copied or the gateway cannot be started
+     */
+    public static UpstreamGateway open(@NotNull Path configRoot, int port) throws IOException {
+        UpstreamGateway gateway = new UpstreamGateway(port);
+        try {
+            gateway.routeDatasets(configRoot);
+        } catch (IOException e) {
+            gateway.close();
+            throw e;
+        }
+        gateway.server.start();
+        return gateway;
+    }
+
+    /**
+     * Routes a URL through the running gateway, for settings that must match the URLs Terra-- actually requests.
+     *
+     * @param url an upstream URL
+     * @return the URL Terra-- requests instead, or the same URL if the gateway is not running
+     */
+    @NotNull
+    public static synchronized String route(@NotNull String url) {
+        if (instance == null) return url;
+        return URL_PATTERN.matcher(url).replaceFirst(match -> Matcher.quoteReplacement(instance.target + match.group(1) + "/"));
+    }
+
+    /**
+     * Opens a connection to each of the given URLs with the running gateway's client, in the background,
+     * so the first chunks neither wait for DNS nor for the TLS handshake. The connections are then kept alive by the client.
+     *
+     * @param urls the upstream URLs to connect to
+     * @return false if the gateway is not running, in which case nothing is done
+     */
+    public static synchronized boolean warmUp(@NotNull Collection<URI> urls) {
+        if (instance == null) return false;
+        for (URI url : urls) {
+            HttpRequest request = HttpRequest.newBuilder(url)
+                    .timeout(instance.requestTimeout)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            // Whatever the status, the connection is open
+            instance.client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    Terraplusminus.instance.getComponentLogger().warn("Could not connect to {}, terrain data from it will not load", url.getHost());
+                }
+            });
+        }
+        return true;
+    }
+
+    private static HttpClient.Version httpVersion() {
+        String version = Terraplusminus.config.getString("http.version", "HTTP_2");
+        try {
+            return HttpClient.Version.valueOf(version.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Unknown http.version '{}', expected HTTP_2 or HTTP_1_1, using HTTP_2", version);
+            return HttpClient.Version.HTTP_2;
+        }
+    }
+
+    private void routeDatasets(Path configRoot) throws IOException {
+        if (!Files.isDirectory(configRoot)) return;
+        try (Stream<Path> files = Files.walk(configRoot)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".json5") || !Files.isRegularFile(file)) continue;
+                Path routed = this.routedConfigRoot.resolve(configRoot.relativize(file).toString());
+                Files.createDirectories(routed.getParent());
+                String config = Files.readString(file, StandardCharsets.UTF_8);
+                AUTHORITY_PATTERN.matcher(config).results()
+                        .forEach(match -> this.allowedAuthorities.add(match.group(1).toLowerCase(Locale.ROOT)));
+                Matcher matcher = URL_PATTERN.matcher(config);
+                Files.writeString(routed, matcher.replaceAll(match -> Matcher.quoteReplacement(this.target + match.group(1) + "/")));
+            }
+        }
+    }
+
+    /**
+     * Stops relaying, and deletes the routed dataset configurations.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        if (!Files.exists(this.routedConfigRoot)) return;
+        try (Stream<Path> files = Files.walk(this.routedConfigRoot)) {
+            // Children first
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to delete the routed dataset configurations in {}", this.routedConfigRoot, e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            URI uri = exchange.getRequestURI();
+            String path = uri.getRawPath().substring(1);
+            int separator = path.indexOf('/');
+            String scheme = separator < 0 ? "" : path.substring(0, separator);
+            if (!scheme.equals("http") && !scheme.equals("https")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            URI target;
+            try {
+                target = URI.create(scheme + "://" + path.substring(separator + 1) + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()));
+            } catch (IllegalArgumentException e) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            String host = hostOf(target);
+            if (host == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            // Requests replayed by the fixture server target it, and it appears as such in the routed configurations
+            if (target.getRawAuthority() == null || !this.allowedAuthorities.contains(target.getRawAuthority().toLowerCase(Locale.ROOT))) {
+                Terraplusminus.instance.getComponentLogger().debug("Refusing to relay to {}, which no dataset uses", target.getRawAuthority());
+                exchange.sendResponseHeaders(403, -1);
+                return;
+            }
+
+            HttpRequest.Builder request = HttpRequest.newBuilder(target).timeout(this.requestTimeout).GET();
+            for (String header : REQUEST_HEADERS) {
+                String value = exchange.getRequestHeaders().getFirst(header);
+                if (value != null) request.header(header, value);
+            }
+            // A connection slot first: waiting for one must not count as a request in flight for the limiter
+            Semaphore hostLimit = this.hostLimits.get(host);
+            try {
+                if (hostLimit != null) hostLimit.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            AdaptiveRateLimiter.Permit permit;
+            HttpResponse<byte[]> response;
+            try {
+                try {
+                    permit = AdaptiveRateLimiter.acquire(host);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    response = this.client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+                } catch (IOException e) {
+                    // Refused, reset or timed out
+                    permit.overloaded();
+                    Terraplusminus.instance.getComponentLogger().debug("Failed to fetch {}", target, e);
+                    exchange.sendResponseHeaders(502, -1);
+                    return;
+                } catch (InterruptedException e) {
+                    permit.overloaded();
+                    Thread.currentThread().interrupt();
+                    exchange.sendResponseHeaders(503, -1);
+                    return;
+                } finally {
+                    GenerationMetrics.hostFetch(host).recordSince(start); // Failures included, a timeout is latency too
+                }
+            } finally {
+                if (hostLimit != null) hostLimit.release();
+            }
+
+            int status = response.statusCode();
+            if (status == 429 || status == 503) {
+                permit.throttled(AdaptiveRateLimiter.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+            } else if (status >= 500) {
+                permit.overloaded();
+            } else {
+                permit.succeeded(); // Including missing tiles
+            }
+            for (String header : RESPONSE_HEADERS) {
+                response.headers().firstValue(header).ifPresent(value -> exchange.getResponseHeaders().set(header, value));
+            }
+            byte[] body = response.body();
+            if (body.length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        }
+    }
+
+    @Nullable
+    private static String hostOf(URI target) {
+        String host = target.getHost();
+        if (host == null) return null;
+        if (host.equals("127.0.0.1") || host.equals("localhost")) {
+            Matcher matcher = ROUTED_PATH_PATTERN.matcher(target.getRawPath());
+            if (matcher.matches()) return matcher.group(1);
+        }
+        return host;
+    }
+
+}
@@ -0,0 +1,155 @@
+package de.btegermany.terraplusminus.events;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.utils.ConfigurationHelper;
+import de.btegermany.terraplusminus.utils.LinkedWorld;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.TextDecoration;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Shows the real world height of each player in their action bar.
+ * <p>
+ * The height is sent when it changes, as soon as the player moves, and sent again before the action bar fades.
+ * Every player is checked every {@value #SWEEP_TICKS} ticks for that, in batches spread across the ticks,
+ * and the components are cached per height.
+ * Everything runs on the main thread, so the state of the players is not synchronized.
+ */
+public class ActionBarDispatcher implements Listener, Runnable {
+
+    private static final int SWEEP_TICKS = 5; // Every player is checked once in that many ticks
+    private static final int KEEP_ALIVE_TICKS = 40; // The client fades the action bar out after 60 ticks
+    private static final int NO_HEIGHT = Integer.MIN_VALUE;
+    private static final int CACHED_HEIGHTS = 8192; // Components of heights between -4096 and 4095 are kept
+
+    private final Map<String, Integer> worldOffsets;
+    private final int defaultOffset;
+    private final Map<UUID, PlayerState> states = new HashMap<>();
+    private final Component[] components = new Component[CACHED_HEIGHTS];
+
+    private final List<Player> sweep = new ArrayList<>();
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private int sweepIndex;
+    private int batchSize;
+    private int tick;
+
+    /**
+     * @param worldOffsets  the terrain offset of the worlds that have their own, like linked worlds
+     * @param defaultOffset the terrain offset of the other worlds
+     */
+    public ActionBarDispatcher(@NotNull Map<String, Integer> worldOffsets, int defaultOffset) {
+        this.worldOffsets = Map.copyOf(worldOffsets);
+        this.defaultOffset = defaultOffset;
+    }
+
+    /**
+     * Creates a dispatcher with the terrain offsets of the plugin's configuration, including the ones of the linked worlds.
+     */
+    @NotNull
+    public static ActionBarDispatcher fromConfig() {
+        Map<String, Integer> worldOffsets = new HashMap<>();
+        // Linked worlds with the server method are on other servers, they have no offset here
+        if (Terraplusminus.config.getBoolean("linked_worlds.enabled")
+                && "MULTIVERSE".equalsIgnoreCase(Terraplusminus.config.getString("linked_worlds.method"))) {
+            for (LinkedWorld world : ConfigurationHelper.getWorlds()) {
+                worldOffsets.put(world.getWorldName(), world.getOffset());
+            }
+        }
+        return new ActionBarDispatcher(worldOffsets, Terraplusminus.config.getInt("terrain_offset.y"));
+    }
+
+    /**
+     * Registers the dispatcher and starts its task.
+     *
+     * @param plugin the plugin owning the listener and the task
+     */
+    public void start(@NotNull Plugin plugin) {
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimer(plugin, this, 1L, 1L);
+    }
+
+    @Override
+    public void run() {
+        this.tick++;
+        if (this.sweepIndex >= this.sweep.size()) {
+            this.sweep.clear();
+            this.sweep.addAll(Bukkit.getOnlinePlayers());
+            this.sweepIndex = 0;
+            this.batchSize = (this.sweep.size() + SWEEP_TICKS - 1) / SWEEP_TICKS;
+        }
+        int end = Math.min(this.sweepIndex + this.batchSize, this.sweep.size());
+        for (; this.sweepIndex < end; this.sweepIndex++) {
+            Player player = this.sweep.get(this.sweepIndex);
+            if (player.isOnline()) this.update(player, player.getLocation(this.scratch));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    void onPlayerMove(org.bukkit.event.player.PlayerMoveEvent event) {
+        this.update(event.getPlayer(), event.getTo());
+    }
+
+    @EventHandler
+    void onPlayerQuit(PlayerQuitEvent event) {
+        this.states.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void update(Player player, Location location) {
+        PlayerState state = this.states.computeIfAbsent(player.getUniqueId(), uuid -> new PlayerState());
+        World world = location.getWorld();
+        if (world != state.world) {
+            state.world = world;
+            state.offset = world == null ? this.defaultOffset : this.worldOffsets.getOrDefault(world.getName(), this.defaultOffset);
+            state.height = NO_HEIGHT;
+        }
+
+        int height = location.getBlockY() - state.offset;
+        if (height == state.height && this.tick - state.sentTick < KEEP_ALIVE_TICKS) return;
+        if (player.getInventory().getItemInMainHand().getType() == Material.DEBUG_STICK) {
+            state.height = NO_HEIGHT; // The debug stick uses the action bar, show the height again once it is put away
+            return;
+        }
+        player.sendActionBar(this.component(height));
+        state.height = height;
+        state.sentTick = this.tick;
+    }
+
+    private Component component(int height) {
+        int index = height + CACHED_HEIGHTS / 2;
+        if (index < 0 || index >= CACHED_HEIGHTS) return text(height);
+        Component component = this.components[index];
+        if (component == null) {
+            component = text(height);
+            this.components[index] = component;
+        }
+        return component;
+    }
+
+    private static Component text(int height) {
+        return Component.text(height + "m").decorate(TextDecoration.BOLD);
+    }
+
+    private static final class PlayerState {
+        World world;
+        int offset;
+        int height = NO_HEIGHT;
+        int sentTick;
+    }
+
+}
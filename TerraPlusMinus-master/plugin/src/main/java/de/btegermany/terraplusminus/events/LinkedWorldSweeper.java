@@ -0,0 +1,125 @@
+package de.btegermany.terraplusminus.events;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.utils.ConfigurationHelper;
+import de.btegermany.terraplusminus.utils.LinkedWorld;
+import io.papermc.lib.PaperLib;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Teleports players between linked Multiverse worlds when they stay below or above the height range of their world.
+ * <p>
+ * Moves only mark the players that crossed a boundary towards a linked world, which costs a comparison for everyone else.
+ * A single task then checks the marked players every {@value #SWEEP_TICKS} ticks and teleports those that stayed
+ * beyond the boundary for {@value #DELAY_TICKS} ticks, so the scheduler load does not depend on the number of players.
+ * Everything runs on the main thread.
+ */
+public class LinkedWorldSweeper implements Listener, Runnable {
+
+    private static final long SWEEP_TICKS = 10L;
+    private static final long DELAY_TICKS = 60L;
+
+    private final int xOffset;
+    private final int zOffset;
+    private final Map<UUID, Long> crossedAt = new HashMap<>(); // Tick at which each marked player crossed a boundary
+    private final Map<String, LinkedWorld[]> neighbours = new HashMap<>(); // Worlds below and above each world, by name
+    private final Location scratch = new Location(null, 0, 0, 0);
+    private long tick;
+
+    public LinkedWorldSweeper() {
+        this.xOffset = Terraplusminus.config.getInt("terrain_offset.x");
+        this.zOffset = Terraplusminus.config.getInt("terrain_offset.z");
+    }
+
+    /**
+     * Registers the sweeper and starts its task.
+     *
+     * @param plugin the plugin owning the listener and the task
+     */
+    public void start(@NotNull Plugin plugin) {
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+        Bukkit.getScheduler().runTaskTimer(plugin, this, SWEEP_TICKS, SWEEP_TICKS);
+        Terraplusminus.instance.getComponentLogger().info("Linked worlds enabled, using Multiverse method.");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    void onPlayerMove(org.bukkit.event.player.PlayerMoveEvent event) {
+        if (this.target(event.getTo()) != null) {
+            UUID uuid = event.getPlayer().getUniqueId();
+            if (!this.crossedAt.containsKey(uuid)) this.crossedAt.put(uuid, this.tick);
+        } else if (this.target(event.getFrom()) != null) {
+            this.crossedAt.remove(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler
+    void onPlayerQuit(PlayerQuitEvent event) {
+        this.crossedAt.remove(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * @return the linked world to send a player at this location to, or null if the location is within its world's range
+     * or there is no linked world in that direction
+     */
+    @Nullable
+    private LinkedWorld target(Location location) {
+        World world = location.getWorld();
+        if (world == null) return null;
+        double y = location.getY();
+        if (y >= 0 && y <= world.getMaxHeight()) return null;
+        LinkedWorld[] neighbours = this.neighbours.computeIfAbsent(world.getName(), name -> new LinkedWorld[]{
+                ConfigurationHelper.getPreviousServerName(name),
+                ConfigurationHelper.getNextServerName(name)
+        });
+        return y < 0 ? neighbours[0] : neighbours[1];
+    }
+
+    @Override
+    public void run() {
+        this.tick += SWEEP_TICKS;
+        Iterator<Map.Entry<UUID, Long>> iterator = this.crossedAt.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player == null) {
+                iterator.remove();
+                continue;
+            }
+            Location location = player.getLocation(this.scratch);
+            LinkedWorld target = this.target(location);
+            if (target == null) {
+                iterator.remove();
+                continue;
+            }
+            if (this.tick - entry.getValue() < DELAY_TICKS) continue;
+
+            iterator.remove();
+            this.teleportPlayer(target, location, player);
+        }
+    }
+
+    private void teleportPlayer(LinkedWorld linkedWorld, Location location, Player p) {
+        World tpWorld = Bukkit.getWorld(linkedWorld.getWorldName());
+        if (tpWorld == null) return;
+        Location newLocation = new Location(tpWorld, location.getX() + xOffset, tpWorld.getMinHeight(), location.getZ() + zOffset, location.getYaw(), location.getPitch());
+        PaperLib.teleportAsync(p, newLocation);
+        p.setFlying(true);
+        p.sendMessage(Terraplusminus.config.getString("prefix") + "§7You have been teleported to another world.");
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.btegermany.terraplusminus.fixtures;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Zip archive of recorded upstream responses, along with the Terra-- dataset configurations they were recorded with.
+ * <p>
+ * Dataset configurations are stored under {@code datasets/}, with their path relative to the Terra-- config root.
+ * Responses are stored under {@code responses/}, named after the request as routed by {@link FixtureServer}
+ * ({@code <scheme>/<host>/<path>[?<query>]}), with their status code and content type in the entry comment.
+ */
+final class FixtureArchive {
+
+    private static final String DATASETS = "datasets/";
+    private static final String RESPONSES = "responses/";
+
+    final Map<String, byte[]> datasets = new ConcurrentHashMap<>();
+    final Map<String, Response> responses = new ConcurrentHashMap<>();
+
+    /**
+     * @param file the archive to read
+     * @return the archive's content, empty if the file does not exist
+     * @throws IOException if the archive exists but cannot be read
+     */
+    static FixtureArchive read(@NotNull Path file) throws IOException {
+        FixtureArchive archive = new FixtureArchive();
+        if (!Files.exists(file)) return archive;
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) continue;
+                byte[] content;
+                try (InputStream input = zip.getInputStream(entry)) {
+                    content = input.readAllBytes();
+                }
+                if (entry.getName().startsWith(DATASETS)) {
+                    archive.datasets.put(entry.getName().substring(DATASETS.length()), content);
+                } else if (entry.getName().startsWith(RESPONSES)) {
+                    archive.responses.put(entry.getName().substring(RESPONSES.length()), Response.parse(entry.getComment(), content));
+                }
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * Writes the archive, replacing the file atomically so an interrupted write never loses a previous recording.
+     */
+    void write(@NotNull Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = parent.resolve(file.getFileName() + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temporary); ZipOutputStream zip = new ZipOutputStream(output)) {
+            for (Map.Entry<String, byte[]> dataset : new TreeMap<>(this.datasets).entrySet()) {
+                zip.putNextEntry(new ZipEntry(DATASETS + dataset.getKey()));
+                zip.write(dataset.getValue());
+                zip.closeEntry();
+            }
+            for (Map.Entry<String, Response> response : new TreeMap<>(this.responses).entrySet()) {
+                ZipEntry entry = new ZipEntry(RESPONSES + response.getKey());
+                entry.setComment(response.getValue().status() + " " + response.getValue().contentType());
+                zip.putNextEntry(entry);
+                zip.write(response.getValue().body());
+                zip.closeEntry();
+            }
+        }
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * A recorded upstream response.
+     *
+     * @param status      the HTTP status code
+     * @param contentType the Content-Type header, empty if there was none
+     * @param body        the response body
+     */
+    record Response(int status, @NotNull String contentType, byte @NotNull [] body) {
+
+        private static Response parse(@Nullable String comment, byte[] body) throws IOException {
+            if (comment == null) throw new IOException("Recorded response without a status");
+            String[] parts = comment.split(" ", 2);
+            try {
+                return new Response(Integer.parseInt(parts[0]), parts.length > 1 ? parts[1] : "", body);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid recorded status: " + comment, e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,318 @@
+package de.btegermany.terraplusminus.fixtures;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.btegermany.terraplusminus.Terraplusminus;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for the upstream APIs Terra-- fetches terrain data from, to generate terrain reproducibly and offline.
+ * <p>
+ * The Terra-- dataset configurations are copied to a separate config root with every URL routed to this server,
+ * {@code https://host/path} becoming {@code http://127.0.0.1:<port>/https/host/path}. The server then either:
+ * <ul>
+ *     <li>{@linkplain Mode#RECORD records}: forwards each request to its upstream host and saves the response to a {@link FixtureArchive},</li>
+ *     <li>{@linkplain Mode#REPLAY replays}: answers from the archive only, never touching the network,
+ *     optionally with injected latency, jitter, throttling and connection resets.</li>
+ * </ul>
+ * The dataset configurations are recorded in the archive too, so a recording can be replayed anywhere.
+ * <p>
+ * Each server thread draws its faults from its own random generator, seeded from the thread's index,
+ * so that threads do not contend on a shared generator and each one sees the same sequence from run to run.
+ */
+public final class FixtureServer implements Closeable {
+
+    private static final Pattern URL_PATTERN = Pattern.compile("(https?)://(?=[^/\\s\"'$]+)");
+    private static final long SEED = 0x7E77A;
+    private static final int THREADS = 32;
+
+    @Nullable private static FixtureServer instance;
+
+    private final Mode mode;
+    private final Path archiveFile;
+    private final FixtureArchive archive;
+    private final Faults faults;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    @Nullable private final HttpClient upstream;
+    private final ThreadLocal<Random> random = new ThreadLocal<>(); // Set by each server thread
+    private final AtomicInteger threadIndex = new AtomicInteger();
+    @Getter private final Path routedConfigRoot;
+
+    private final LongAdder served = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+
+    private FixtureServer(Mode mode, Path archiveFile, FixtureArchive archive, Faults faults) throws IOException {
+        this.mode = mode;
+        this.archiveFile = archiveFile;
+        this.archive = archive;
+        this.faults = faults;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+            long seed = SEED + this.threadIndex.getAndIncrement();
+            Thread thread = new Thread(() -> {
+                this.random.set(new Random(seed));
+                runnable.run();
+            }, "Terraplusminus fixture server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The client keeps its default executor: the handlers block on it, so sharing theirs could leave no thread to complete responses
+        this.upstream = mode == Mode.RECORD ? HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build() : null;
+        this.routedConfigRoot = Files.createTempDirectory("terraplusminus-datasets");
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(this.executor);
+    }
+
+    /**
+     * Starts the server selected in the plugin's configuration, if any, and points Terra-- to it.
+     *
+     * @param configRoot the Terra-- config root holding the dataset configurations to route
+     * @return the config root Terra-- must use instead, or null if the real upstream APIs are used
+     */
+    @Nullable
+    public static synchronized Path start(@NotNull Path configRoot) {
+        String configured = Terraplusminus.config.getString("fixtures.mode", "disabled").toUpperCase(Locale.ROOT);
+        if (configured.equals("DISABLED")) return null;
+        Mode mode;
+        try {
+            mode = Mode.valueOf(configured);
+        } catch (IllegalArgumentException e) {
+            Terraplusminus.instance.getComponentLogger().error("Unknown fixtures mode '{}', expected disabled, record or replay", configured);
+            return null;
+        }
+        Path archive = Terraplusminus.instance.getDataPath().resolve(Terraplusminus.config.getString("fixtures.archive", "fixtures/responses.zip"));
+        Faults faults = new Faults(
+                Terraplusminus.config.getLong("fixtures.replay.latency_millis", 0L),
+                Terraplusminus.config.getLong("fixtures.replay.jitter_millis", 0L),
+                Terraplusminus.config.getDouble("fixtures.replay.throttle_rate", 0.0d),
+                Terraplusminus.config.getDouble("fixtures.replay.reset_rate", 0.0d)
+        );
+        try {
+            instance = open(mode, archive, configRoot, faults);
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().error("Failed to start the fixture server, using the real APIs", e);
+            return null;
+        }
+        Terraplusminus.instance.getComponentLogger().warn("Terrain data is {} {}, not generated from the live APIs",
+                mode == Mode.RECORD ? "recorded to" : "replayed from", archive);
+        return instance.routedConfigRoot;
+    }
+
+    /**
+     * Stops the server started with {@link #start(Path)}, saving the recording if there is one.
+     */
+    public static synchronized void stop() {
+        if (instance == null) return;
+        instance.close();
+        instance = null;
+    }
+
+    /**
+     * Starts a server and routes the dataset configurations to it.
+     *
+     * @param mode       whether to record or replay
+     * @param archive    the archive to record to or replay from
+     * @param configRoot the Terra-- config root to record the dataset configurations from, unused when replaying
+     * @param faults     the faults to inject when replaying
+     * @return the running server, whose {@link #getRoutedConfigRoot() routed config root} Terra-- must use
+     * @throws IOException if the archive cannot be read or the server cannot be started
+     */
+    public static FixtureServer open(@NotNull Mode mode, @NotNull Path archive, @NotNull Path configRoot, @NotNull Faults faults) throws IOException {
+        FixtureArchive content = FixtureArchive.read(archive);
+        if (mode == Mode.RECORD) {
+            recordDatasets(configRoot, content);
+        } else if (content.datasets.isEmpty()) {
+            throw new IOException("No recorded dataset configuration in " + archive);
+        }
+        FixtureServer server = new FixtureServer(mode, archive, content, faults);
+        server.routeDatasets();
+        server.server.start();
+        return server;
+    }
+
+    private static void recordDatasets(Path configRoot, FixtureArchive archive) throws IOException {
+        if (!Files.isDirectory(configRoot)) return;
+        try (Stream<Path> files = Files.walk(configRoot)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().endsWith(".json5") || !Files.isRegularFile(file)) continue;
+                String name = configRoot.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                archive.datasets.put(name, Files.readAllBytes(file));
+            }
+        }
+    }
+
+    private void routeDatasets() throws IOException {
+        String target = "http://127.0.0.1:" + this.server.getAddress().getPort() + "/";
+        for (Map.Entry<String, byte[]> dataset : this.archive.datasets.entrySet()) {
+            Path file = this.routedConfigRoot.resolve(dataset.getKey()).normalize();
+            if (!file.startsWith(this.routedConfigRoot)) throw new IOException("Invalid dataset name: " + dataset.getKey());
+            Files.createDirectories(file.getParent());
+            String config = new String(dataset.getValue(), StandardCharsets.UTF_8);
+            Matcher matcher = URL_PATTERN.matcher(config);
+            Files.writeString(file, matcher.replaceAll(match -> Matcher.quoteReplacement(target + match.group(1) + "/")));
+        }
+    }
+
+    /**
+     * Stops serving, and saves the archive if recording.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        if (this.mode == Mode.RECORD) {
+            try {
+                this.archive.write(this.archiveFile);
+            } catch (IOException e) {
+                Terraplusminus.instance.getComponentLogger().error("Failed to save the fixture archive {}", this.archiveFile, e);
+            }
+        }
+        deleteRecursively(this.routedConfigRoot);
+        Terraplusminus.instance.getComponentLogger().info("Fixture server stopped: {} responses served, {} not recorded, {} throttled, {} connections reset",
+                this.served.sum(), this.misses.sum(), this.throttled.sum(), this.resets.sum());
+    }
+
+    private static void deleteRecursively(Path directory) {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> files = Files.walk(directory)) {
+            // Children first
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to delete the routed dataset configurations in {}", directory, e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            URI uri = exchange.getRequestURI();
+            String key = uri.getRawPath().substring(1) + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+            FixtureArchive.Response response = this.mode == Mode.RECORD ? this.forward(exchange, key) : this.replay(key);
+            if (response == null) return; // Connection reset
+            if (!response.contentType().isEmpty()) exchange.getResponseHeaders().set("Content-Type", response.contentType());
+            if (response.status() == 429) exchange.getResponseHeaders().set("Retry-After", "1");
+            if (response.body().length == 0) {
+                exchange.sendResponseHeaders(response.status(), -1);
+                return;
+            }
+            exchange.sendResponseHeaders(response.status(), response.body().length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(response.body());
+            }
+        }
+    }
+
+    private FixtureArchive.Response forward(HttpExchange exchange, String key) {
+        int separator = key.indexOf('/');
+        URI target = URI.create(key.substring(0, separator) + "://" + key.substring(separator + 1));
+        HttpRequest.Builder request = HttpRequest.newBuilder(target).timeout(Duration.ofSeconds(30)).GET();
+        List<String> userAgent = exchange.getRequestHeaders().get("User-Agent");
+        if (userAgent != null && !userAgent.isEmpty()) request.header("User-Agent", userAgent.getFirst());
+        try {
+            HttpResponse<byte[]> upstreamResponse = this.upstream.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+            FixtureArchive.Response response = new FixtureArchive.Response(
+                    upstreamResponse.statusCode(),
+                    upstreamResponse.headers().firstValue("Content-Type").orElse(""),
+                    upstreamResponse.body()
+            );
+            // Throttling and server errors are passed on, but not worth replaying
+            if (response.status() != 429 && response.status() < 500) this.archive.responses.put(key, response);
+            this.served.increment();
+            return response;
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().debug("Failed to forward {} to {}", key, target, e);
+            return new FixtureArchive.Response(502, "", new byte[0]);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new FixtureArchive.Response(503, "", new byte[0]);
+        }
+    }
+
+    @Nullable
+    private FixtureArchive.Response replay(String key) {
+        Random random = this.random.get();
+        long delay = this.faults.latencyMillis();
+        if (this.faults.jitterMillis() > 0) delay += random.nextLong(this.faults.jitterMillis() + 1);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        double roll = random.nextDouble();
+        if (roll < this.faults.resetRate()) {
+            // Closing the exchange before sending headers drops the connection
+            this.resets.increment();
+            return null;
+        }
+        if (roll < this.faults.resetRate() + this.faults.throttleRate()) {
+            this.throttled.increment();
+            return new FixtureArchive.Response(429, "", new byte[0]);
+        }
+        FixtureArchive.Response response = this.archive.responses.get(key);
+        if (response == null) {
+            this.misses.increment();
+            Terraplusminus.instance.getComponentLogger().debug("No recorded response for {}", key);
+            return new FixtureArchive.Response(404, "", new byte[0]);
+        }
+        this.served.increment();
+        return response;
+    }
+
+    public enum Mode {
+        RECORD,
+        REPLAY
+    }
+
+    /**
+     * Faults injected into replayed responses.
+     *
+     * @param latencyMillis fixed delay added to every response
+     * @param jitterMillis  maximum random delay added on top of the fixed one
+     * @param throttleRate  fraction of requests answered with HTTP 429 and a one second Retry-After
+     * @param resetRate     fraction of requests whose connection is dropped without an answer
+     */
+    public record Faults(long latencyMillis, long jitterMillis, double throttleRate, double resetRate) {
+
+        public static final Faults NONE = new Faults(0L, 0L, 0.0d, 0.0d);
+
+    }
+
+}
@@ -0,0 +1,380 @@
+package de.btegermany.terraplusminus.gen;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.gen.tree.BlockSink;
+import de.btegermany.terraplusminus.gen.tree.TreePlan;
+import de.btegermany.terraplusminus.gen.tree.TreePopulator;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.substitutes.BlockState;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Durable queue of placeholder chunks, i.e. chunks that were generated before their terrain data was available.
+ * <p>
+ * {@link RealWorldGenerator} never waits for the network: when a chunk's data is missing, it generates a flat placeholder
+ * and {@link #add(String, int, int) records} the chunk here. This queue then keeps requesting the data in the background,
+ * and once it arrives, rewrites the placeholder in place, spreading the block updates over several ticks
+ * with a budget of blocks and of time per tick.
+ * The queue is saved to the plugin directory so placeholders are still repaired after a restart.
+ * <p>
+ * New entries are looked up right away. When their data is still missing, they are scheduled again on a hashed timing wheel
+ * with one slot per lookup run, every {@value #INTERVAL_TICKS} ticks, after a delay that backs off exponentially (see {@link ChunkStatusCache}).
+ * Each lookup run therefore only looks at the entries that are due, however many are waiting.
+ */
+public final class ChunkRepairQueue {
+
+    private static final long INTERVAL_TICKS = 10L; // Between lookups of due entries, the active repair steps every tick
+    private static final long SAVE_INTERVAL_TICKS = 20L * 30;
+    private static final int BLOCK_BUDGET_PER_TICK = 4096;
+    private static final long TIME_BUDGET_NANOS = 2_000_000L; // Per tick, whichever of the two budgets runs out first
+    private static final int MAX_LOOKUPS_PER_TICK = 64;
+    private static final int REQUEST_RESERVE = 2; // Leave some requests to the chunks being generated right now
+    private static final int WHEEL_SLOTS = 256; // More than the longest backoff, 128 s at one slot every 10 ticks
+
+    private static ChunkRepairQueue instance;
+
+    private final Path file;
+    private final Set<Entry> entries = new LinkedHashSet<>(); // guarded by itself
+    private volatile boolean dirty;
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>(); // Entries to look up on the next run
+    private final ArrayDeque<Entry> due = new ArrayDeque<>(); // main thread only
+    private final List<List<Entry>> wheel = new ArrayList<>(WHEEL_SLOTS); // main thread only
+    private int wheelPosition; // main thread only
+    private long ticks; // main thread only
+    private ChunkRepair activeRepair; // main thread only
+    private Entry loadingEntry; // main thread only
+
+    private ChunkRepairQueue(Plugin plugin) {
+        this.file = plugin.getDataPath().resolve("repair_queue.txt");
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            this.wheel.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Loads the queue from disk and starts repairing chunks.
+     *
+     * @param plugin the plugin to run the repair tasks with
+     */
+    public static void start(@NotNull Plugin plugin) {
+        instance = new ChunkRepairQueue(plugin);
+        instance.load();
+        Bukkit.getScheduler().runTaskTimer(plugin, instance::tick, 1L, 1L);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, instance::saveIfDirty, SAVE_INTERVAL_TICKS, SAVE_INTERVAL_TICKS);
+    }
+
+    /**
+     * Saves the queue, to be called when the plugin is disabled.
+     */
+    public static void stop() {
+        if (instance != null) instance.save();
+    }
+
+    /**
+     * @return the running queue, or null if the plugin is not enabled
+     */
+    @Nullable
+    public static ChunkRepairQueue get() {
+        return instance;
+    }
+
+    /**
+     * Records a placeholder chunk. Can be called from any thread.
+     */
+    public void add(@NotNull String worldName, int chunkX, int chunkZ) {
+        synchronized (this.entries) {
+            Entry entry = new Entry(worldName, chunkX, chunkZ);
+            if (this.entries.add(entry)) {
+                this.dirty = true;
+                this.added.add(entry);
+            }
+        }
+        ChunkStatusCache.markAsFailed(worldName, chunkX, chunkZ);
+    }
+
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /**
+     * @param limit the maximum number of entries to return
+     * @return the oldest entries of the queue, as "x z world" strings
+     */
+    public List<String> describe(int limit) {
+        List<String> descriptions = new ArrayList<>();
+        synchronized (this.entries) {
+            for (Entry entry : this.entries) {
+                if (descriptions.size() >= limit) break;
+                descriptions.add(entry.x() + " " + entry.z() + " " + entry.world());
+            }
+        }
+        return descriptions;
+    }
+
+    /**
+     * @param limit the maximum number of entries to return
+     * @return the oldest entries of the queue with the state of their retries, for people to read
+     */
+    public List<String> describeRetries(int limit) {
+        List<String> descriptions = new ArrayList<>();
+        synchronized (this.entries) {
+            for (Entry entry : this.entries) {
+                if (descriptions.size() >= limit) break;
+                String retries = ChunkStatusCache.describe(entry.world(), entry.x(), entry.z());
+                descriptions.add(entry.x() + " " + entry.z() + " " + entry.world() + (retries == null ? "" : " (" + retries + ")"));
+            }
+        }
+        return descriptions;
+    }
+
+    private void tick() {
+        if (this.activeRepair != null) {
+            if (!this.activeRepair.step(BLOCK_BUDGET_PER_TICK, System.nanoTime() + TIME_BUDGET_NANOS)) return;
+            this.complete(this.activeRepair.entry);
+            GenerationMetrics.REPAIRED_CHUNKS.increment();
+            this.activeRepair = null;
+        }
+        if (++this.ticks % INTERVAL_TICKS == 0) this.lookUp();
+    }
+
+    private void lookUp() {
+        for (Entry entry; (entry = this.added.poll()) != null; ) {
+            this.due.add(entry);
+        }
+        List<Entry> slot = this.wheel.get(this.wheelPosition);
+        this.due.addAll(slot);
+        slot.clear();
+        this.wheelPosition = (this.wheelPosition + 1) % WHEEL_SLOTS;
+
+        if (this.activeRepair != null || this.loadingEntry != null) return;
+
+        for (int lookups = 0; lookups < MAX_LOOKUPS_PER_TICK && !this.due.isEmpty(); lookups++) {
+            Entry entry = this.due.peekFirst();
+            synchronized (this.entries) {
+                if (!this.entries.contains(entry)) { // Repaired in the meantime
+                    this.due.pollFirst();
+                    continue;
+                }
+            }
+            World world = Bukkit.getWorld(entry.world());
+            if (world == null) { // Not loaded right now, keep it for later
+                this.due.pollFirst();
+                this.schedule(entry, WHEEL_SLOTS);
+                continue;
+            }
+            if (!(world.getGenerator() instanceof RealWorldGenerator generator)) {
+                this.due.pollFirst();
+                this.complete(entry);
+                continue;
+            }
+            CompletableFuture<CachedChunkData> future = generator.getDataService().request(new ChunkPos(entry.x(), entry.z()), REQUEST_RESERVE);
+            if (future == null) break; // Out of request budget, the entry stays first in line
+            this.due.pollFirst();
+            if (!future.isDone()) {
+                this.schedule(entry, 1); // Being fetched, not a failure
+                continue;
+            }
+            CachedChunkData data = future.isCompletedExceptionally() ? null : future.getNow(null);
+            if (data == null) {
+                this.retryLater(entry, future.isCompletedExceptionally() ? future.exceptionNow().toString() : "no terrain data");
+                continue;
+            }
+
+            this.loadingEntry = entry;
+            world.getChunkAtAsync(entry.x(), entry.z()).whenComplete((chunk, error) -> {
+                this.loadingEntry = null;
+                if (chunk != null) {
+                    this.activeRepair = new ChunkRepair(entry, chunk, data, generator);
+                } else {
+                    this.retryLater(entry, error == null ? "chunk not loaded" : error.toString());
+                }
+            });
+            break;
+        }
+    }
+
+    private void retryLater(Entry entry, String error) {
+        long backoff = ChunkStatusCache.recordFailure(entry.world(), entry.x(), entry.z(), error);
+        this.schedule(entry, (int) Math.ceil(backoff / (INTERVAL_TICKS * 50.0)));
+    }
+
+    /**
+     * Puts an entry on the timing wheel, to be looked up again after some runs of the queue.
+     */
+    private void schedule(Entry entry, int runs) {
+        int delay = Math.max(1, Math.min(runs, WHEEL_SLOTS));
+        // The slot of the current run was drained already, a delay of one run is the slot the position now points to
+        this.wheel.get((this.wheelPosition + delay - 1) % WHEEL_SLOTS).add(entry);
+    }
+
+    private void complete(Entry entry) {
+        synchronized (this.entries) {
+            if (this.entries.remove(entry)) {
+                this.dirty = true;
+            }
+        }
+        ChunkStatusCache.removeFailure(entry.world(), entry.x(), entry.z());
+    }
+
+    private void load() {
+        if (!Files.exists(this.file)) return;
+        try {
+            for (String line : Files.readAllLines(this.file, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ", 3); // The world name goes last as it may contain spaces
+                if (parts.length != 3) continue;
+                try {
+                    this.add(parts[2], Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                } catch (NumberFormatException e) {
+                    Terraplusminus.instance.getComponentLogger().warn("Ignoring invalid line in {}: {}", this.file, line);
+                }
+            }
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().error("Failed to read chunk repair queue from {}", this.file, e);
+        }
+        this.dirty = false;
+        if (this.size() > 0) {
+            Terraplusminus.instance.getComponentLogger().info("{} placeholder chunks are waiting to be repaired", this.size());
+        }
+    }
+
+    private void saveIfDirty() {
+        if (this.dirty) this.save();
+    }
+
+    private synchronized void save() {
+        this.dirty = false;
+        List<String> lines = this.describe(Integer.MAX_VALUE);
+        Path tempFile = this.file.resolveSibling("repair_queue.tmp");
+        try {
+            Files.write(tempFile, lines, StandardCharsets.UTF_8);
+            Files.move(tempFile, this.file, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (IOException e) {
+            this.dirty = true;
+            Terraplusminus.instance.getComponentLogger().error("Failed to save chunk repair queue to {}", this.file, e);
+        }
+    }
+
+    private record Entry(String world, int x, int z) {
+    }
+
+    /**
+     * Rewrites the columns of a placeholder chunk one at a time, then places its trees one at a time,
+     * so the work can be spread over several ticks.
+     * <p>
+     * Placeholders get no trees when they are populated, as their terrain data is missing. Trees are written over air only,
+     * and not into neighbouring chunks that are not loaded, which the main thread must not load.
+     */
+    private static final class ChunkRepair {
+
+        private final Entry entry;
+        private final Chunk chunk;
+        private final CachedChunkData data;
+        private final RealWorldGenerator generator;
+        private final TreePlan trees;
+        private final BlockSink treeSink = this::setTreeBlock;
+        private int column = 0;
+        private int tree = 0;
+
+        private ChunkRepair(Entry entry, Chunk chunk, CachedChunkData data, RealWorldGenerator generator) {
+            this.entry = entry;
+            this.chunk = chunk;
+            this.data = data;
+            this.generator = generator;
+            TreePopulator treePopulator = generator.getTreePopulator();
+            this.trees = treePopulator == null
+                    ? TreePlan.EMPTY
+                    : treePopulator.getPlan(chunk.getWorld(), new ChunkPos(entry.x(), entry.z()), data);
+        }
+
+        /**
+         * @param budget   the maximum number of blocks to look at
+         * @param deadline the {@link System#nanoTime()} to stop at, checked between columns and between trees
+         * @return whether the whole chunk has been repaired
+         */
+        boolean step(int budget, long deadline) {
+            World world = this.chunk.getWorld();
+            int minY = world.getMinHeight();
+            int maxY = world.getMaxHeight();
+            int yOffset = this.generator.getYOffset();
+            int placeholderTop = min(max(yOffset, minY), maxY);
+
+            for (; this.column < 16 * 16 && budget > 0 && System.nanoTime() < deadline; this.column++) {
+                int x = this.column >> 4;
+                int z = this.column & 0xF;
+                int groundY = min(this.data.groundHeight(x, z) + yOffset, maxY - 1);
+                int waterY = min(this.data.waterHeight(x, z) + yOffset, maxY - 1);
+
+                Material surface = null;
+                if (groundY >= minY) {
+                    BlockState state = this.data.surfaceBlock(x, z);
+                    Biome biome = RealWorldGenerator.needsBiome(state, groundY) ? this.chunk.getBlock(x, groundY, z).getBiome() : null;
+                    surface = this.generator.surfaceMaterial(state, groundY, biome, groundY + 1 < maxY && waterY > groundY);
+                }
+
+                // Below both the placeholder and the real ground everything is stone already
+                int fromY = max(minY, min(groundY, placeholderTop));
+                int toY = min(maxY, max(max(groundY, waterY) + 1, placeholderTop));
+                for (int y = fromY; y < toY; y++, budget--) {
+                    Material target;
+                    if (y < groundY) target = Material.STONE;
+                    else if (y == groundY) target = surface;
+                    else if (y <= waterY) target = Material.WATER;
+                    else target = Material.AIR;
+
+                    Block block = this.chunk.getBlock(x, y, z);
+                    if (block.getType() != target) {
+                        block.setType(target, false);
+                    }
+                }
+            }
+            if (this.column < 16 * 16) return false;
+
+            for (; this.tree < this.trees.size() && budget > 0 && System.nanoTime() < deadline; this.tree++) {
+                budget -= this.trees.blocks(this.tree);
+                this.trees.place(this.tree, this.treeSink, this.entry.x(), this.entry.z(), yOffset, minY, maxY);
+            }
+            return this.tree >= this.trees.size();
+        }
+
+        private void setTreeBlock(int x, int y, int z, Material material) {
+            World world = this.chunk.getWorld();
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) return;
+            Block block = world.getBlockAt(x, y, z);
+            if (block.getType().isAir()) {
+                block.setType(material, false);
+            }
+        }
+
+    }
+
+}
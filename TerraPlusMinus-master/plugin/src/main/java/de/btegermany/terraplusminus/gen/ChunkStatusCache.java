@@ -0,0 +1,234 @@
+package de.btegermany.terraplusminus.gen;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Chunks that are still placeholders, with the state of the attempts to get their terrain data.
+ * <p>
+ * Chunks are tracked per world, as placeholders of one world say nothing about the same coordinates in another
+ * (the nether, or linked worlds sharing their coordinates). Worlds are numbered the first time one of their chunks is tracked.
+ * <p>
+ * Player moves ask whether a chunk is a placeholder, so that lookup must be cheap: the table uses open addressing
+ * on the world number and chunk coordinates packed in a long, with linear probing, and readers are optimistic, only locking if a write raced with them.
+ * Entries are removed with backward shifting, so there are no tombstones. The table grows up to {@value #MAX_CAPACITY} slots,
+ * chunks beyond half of that are not tracked (they are still repaired, players just are not held back).
+ * <p>
+ * Failed attempts back off exponentially, from {@value #BASE_BACKOFF_MILLIS} ms up to {@value #MAX_BACKOFF_MILLIS} ms.
+ */
+public final class ChunkStatusCache {
+
+    public static final long BASE_BACKOFF_MILLIS = 500L;
+    public static final long MAX_BACKOFF_MILLIS = 120_000L;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = 1 << 20;
+    private static final int COORDINATE_BITS = 22; // Chunk coordinates stay within +-2^21 inside the world border
+    private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+    private static final long EMPTY = Long.MIN_VALUE; // Not a valid key, it would take 2^19 worlds
+
+    private static final Map<String, Integer> WORLDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger WORLD_COUNT = new AtomicInteger();
+
+    private static final StampedLock lock = new StampedLock();
+    // All guarded by lock, keys is also read optimistically
+    private static long[] keys = emptyKeys(INITIAL_CAPACITY);
+    private static int[] attempts = new int[INITIAL_CAPACITY];
+    private static long[] nextRetries = new long[INITIAL_CAPACITY];
+    private static String[] lastErrors = new String[INITIAL_CAPACITY];
+    private static int size;
+
+    private ChunkStatusCache() {
+        throw new IllegalStateException();
+    }
+
+    private static long[] emptyKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static long getChunkKey(int world, int x, int z) {
+        return (long) world << COORDINATE_BITS * 2 | (x & COORDINATE_MASK) << COORDINATE_BITS | z & COORDINATE_MASK;
+    }
+
+    private static int worldNumber(String world) {
+        return WORLDS.computeIfAbsent(world, name -> WORLD_COUNT.getAndIncrement());
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /**
+     * @return the slot of the key, or the empty slot where it would go, in the given table
+     */
+    private static int find(long[] table, long key) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public static void markAsFailed(@NotNull String world, int x, int z) {
+        long key = getChunkKey(worldNumber(world), x, z);
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(keys, key);
+            if (keys[slot] == key) return;
+            if (size + 1 > keys.length >> 1) {
+                if (keys.length >= MAX_CAPACITY) return;
+                grow();
+                slot = find(keys, key);
+            }
+            keys[slot] = key;
+            attempts[slot] = 0;
+            nextRetries[slot] = 0;
+            lastErrors[slot] = null;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static void grow() {
+        long[] oldKeys = keys;
+        int[] oldAttempts = attempts;
+        long[] oldNextRetries = nextRetries;
+        String[] oldLastErrors = lastErrors;
+        int capacity = oldKeys.length << 1;
+        long[] newKeys = emptyKeys(capacity);
+        attempts = new int[capacity];
+        nextRetries = new long[capacity];
+        lastErrors = new String[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int slot = find(newKeys, oldKeys[i]);
+            newKeys[slot] = oldKeys[i];
+            attempts[slot] = oldAttempts[i];
+            nextRetries[slot] = oldNextRetries[i];
+            lastErrors[slot] = oldLastErrors[i];
+        }
+        keys = newKeys;
+    }
+
+    /**
+     * Whether a chunk is a placeholder. Does not allocate and does not lock unless racing with a write.
+     */
+    public static boolean isFailed(@NotNull String world, int x, int z) {
+        Integer number = WORLDS.get(world);
+        if (number == null) return false; // Nothing was ever tracked in that world
+        long key = getChunkKey(number, x, z);
+        long stamp = lock.tryOptimisticRead();
+        long[] table = keys;
+        boolean failed = table[find(table, key)] == key;
+        if (lock.validate(stamp)) return failed;
+        stamp = lock.readLock();
+        try {
+            return keys[find(keys, key)] == key;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Records a failed attempt to get the terrain data of a placeholder chunk.
+     *
+     * @param world the name of the chunk's world
+     * @param x     the chunk's x coordinate
+     * @param z     the chunk's z coordinate
+     * @param error what went wrong, shown by {@code /tplus repairs}
+     * @return how long to wait before the next attempt, in milliseconds
+     */
+    public static long recordFailure(@NotNull String world, int x, int z, @Nullable String error) {
+        long key = getChunkKey(worldNumber(world), x, z);
+        long stamp = lock.writeLock();
+        try {
+            int slot = find(keys, key);
+            int attempt = keys[slot] == key ? ++attempts[slot] : 1;
+            long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 20));
+            if (keys[slot] == key) {
+                nextRetries[slot] = System.currentTimeMillis() + backoff;
+                lastErrors[slot] = error;
+            }
+            return backoff;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the retry state of a chunk in a human-readable form, or null if it is not tracked
+     */
+    @Nullable
+    public static String describe(@NotNull String world, int x, int z) {
+        long key = getChunkKey(worldNumber(world), x, z);
+        long stamp = lock.readLock();
+        try {
+            int slot = find(keys, key);
+            if (keys[slot] != key) return null;
+            if (attempts[slot] == 0) return "not attempted yet";
+            long retryIn = Math.max(0L, nextRetries[slot] - System.currentTimeMillis());
+            return attempts[slot] + " failed attempts, next in " + TimeUnit.MILLISECONDS.toSeconds(retryIn) + " s"
+                    + (lastErrors[slot] == null ? "" : ", last error: " + lastErrors[slot]);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public static void removeFailure(@NotNull String world, int x, int z) {
+        long key = getChunkKey(worldNumber(world), x, z);
+        long stamp = lock.writeLock();
+        try {
+            int mask = keys.length - 1;
+            int hole = find(keys, key);
+            if (keys[hole] != key) return;
+            // Shift back the entries of the probe sequence that would not be found anymore past the hole
+            for (int slot = (hole + 1) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                int home = hash(keys[slot]) & mask;
+                if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    attempts[hole] = attempts[slot];
+                    nextRetries[hole] = nextRetries[slot];
+                    lastErrors[hole] = lastErrors[slot];
+                    hole = slot;
+                }
+            }
+            keys[hole] = EMPTY;
+            lastErrors[hole] = null;
+            size--;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public static int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public static void clearAll() {
+        long stamp = lock.writeLock();
+        try {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(lastErrors, null);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
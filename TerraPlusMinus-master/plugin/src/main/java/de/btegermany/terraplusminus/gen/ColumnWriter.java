@@ -0,0 +1,151 @@
+package de.btegermany.terraplusminus.gen;
+
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import org.bukkit.Material;
+import org.bukkit.generator.ChunkGenerator.ChunkData;
+
+import java.util.Arrays;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.bukkit.Material.STONE;
+import static org.bukkit.Material.WATER;
+
+/**
+ * Writes the stone and water of a chunk with as few region calls as possible.
+ * <p>
+ * Everything below the lowest ground column, and in ocean chunks everything between the highest sea floor and the lowest water surface,
+ * is filled in one call per layer, which Paper turns into whole-section fills.
+ * What remains is a set of per column spans, which are merged into rectangles of columns that share the exact same span.
+ * On flat or terraced terrain, this means a handful of calls per chunk instead of up to 512.
+ * <p>
+ * Instances are not thread safe, use one per thread.
+ */
+final class ColumnWriter {
+
+    private static final int COLUMNS = 16 * 16;
+    private static final ThreadLocal<ColumnWriter> WRITERS = ThreadLocal.withInitial(ColumnWriter::new);
+
+    private final int[] ground = new int[COLUMNS];
+    private final int[] water = new int[COLUMNS];
+    private final int[] spanFrom = new int[COLUMNS];
+    private final int[] spanTo = new int[COLUMNS];
+    private final boolean[] merged = new boolean[COLUMNS];
+
+    static ColumnWriter get() {
+        return WRITERS.get();
+    }
+
+    /**
+     * Fills stone up to the ground and water up to the water surface of each column.
+     *
+     * @param data      the terrain data of the chunk
+     * @param yOffset   the vertical offset of the world
+     * @param minY      the minimum height of the world, inclusive
+     * @param maxY      the maximum height of the world, exclusive
+     * @param chunkData the chunk to write to
+     */
+    void write(CachedChunkData data, int yOffset, int minY, int maxY, ChunkData chunkData) {
+        int lowestGround = Integer.MAX_VALUE;
+        int highestFloor = Integer.MIN_VALUE; // Highest ground among the columns that are under water
+        int lowestWater = Integer.MAX_VALUE;
+        boolean allUnderWater = true;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int i = x * 16 + z;
+                int groundY = min(data.groundHeight(x, z) + yOffset, maxY - 1);
+                int waterY = min(data.waterHeight(x, z) + yOffset, maxY - 1);
+                this.ground[i] = groundY;
+                this.water[i] = waterY;
+                lowestGround = min(lowestGround, groundY);
+                if (waterY > groundY) {
+                    highestFloor = max(highestFloor, groundY);
+                    lowestWater = min(lowestWater, waterY);
+                } else {
+                    allUnderWater = false;
+                }
+            }
+        }
+
+        // Solid layer shared by all columns
+        int solidTop = max(minY, lowestGround + 1);
+        if (solidTop > minY) {
+            chunkData.setRegion(0, minY, 0, 16, solidTop, 16, STONE);
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            this.spanFrom[i] = solidTop;
+            this.spanTo[i] = this.ground[i] + 1;
+        }
+        this.fillSpans(chunkData, STONE);
+
+        // Water layer shared by all columns
+        int sharedWaterFrom = Integer.MAX_VALUE;
+        int sharedWaterTo = Integer.MIN_VALUE;
+        if (allUnderWater && highestFloor < lowestWater) {
+            sharedWaterFrom = max(minY, highestFloor + 1);
+            sharedWaterTo = lowestWater + 1;
+            if (sharedWaterTo > sharedWaterFrom) {
+                chunkData.setRegion(0, sharedWaterFrom, 0, 16, sharedWaterTo, 16, WATER);
+            }
+        }
+        for (int i = 0; i < COLUMNS; i++) {
+            this.spanFrom[i] = max(minY, this.ground[i] + 1);
+            this.spanTo[i] = this.water[i] + 1;
+            if (sharedWaterFrom < sharedWaterTo) {
+                // Only what is left below and above the shared layer
+                this.spanTo[i] = min(this.spanTo[i], sharedWaterFrom);
+            }
+        }
+        this.fillSpans(chunkData, WATER);
+        if (sharedWaterFrom < sharedWaterTo) {
+            for (int i = 0; i < COLUMNS; i++) {
+                this.spanFrom[i] = sharedWaterTo;
+                this.spanTo[i] = this.water[i] + 1;
+            }
+            this.fillSpans(chunkData, WATER);
+        }
+    }
+
+    /**
+     * Fills the spans in {@link #spanFrom} (inclusive) and {@link #spanTo} (exclusive),
+     * greedily merging neighbouring columns with identical spans into rectangles.
+     */
+    private void fillSpans(ChunkData chunkData, Material material) {
+        Arrays.fill(this.merged, false);
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int i = x * 16 + z;
+                int from = this.spanFrom[i];
+                int to = this.spanTo[i];
+                if (this.merged[i] || from >= to) continue;
+
+                int endZ = z + 1;
+                while (endZ < 16 && this.sameSpan(x * 16 + endZ, from, to)) {
+                    endZ++;
+                }
+                int endX = x + 1;
+                while (endX < 16 && this.sameSpans(endX, z, endZ, from, to)) {
+                    endX++;
+                }
+                for (int mx = x; mx < endX; mx++) {
+                    for (int mz = z; mz < endZ; mz++) {
+                        this.merged[mx * 16 + mz] = true;
+                    }
+                }
+                chunkData.setRegion(x, from, z, endX, to, endZ, material);
+            }
+        }
+    }
+
+    private boolean sameSpan(int i, int from, int to) {
+        return !this.merged[i] && this.spanFrom[i] == from && this.spanTo[i] == to;
+    }
+
+    private boolean sameSpans(int x, int fromZ, int toZ, int from, int to) {
+        for (int z = fromZ; z < toZ; z++) {
+            if (!this.sameSpan(x * 16 + z, from, to)) return false;
+        }
+        return true;
+    }
+
+}
@@ -1,11 +1,13 @@
 package de.btegermany.terraplusminus.gen;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import de.btegermany.terraplusminus.Terraplusminus;
 import de.btegermany.terraplusminus.data.KoppenClimateData;
+import de.btegermany.terraplusminus.data.ProjectionGrid;
 import io.papermc.paper.registry.RegistryAccess;
 import io.papermc.paper.registry.RegistryKey;
 import net.buildtheearth.terraminusminus.projection.GeographicProjection;
-import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
 import net.kyori.adventure.key.Key;
 import org.bukkit.block.Biome;
 import org.bukkit.generator.BiomeProvider;
@@ -15,54 +17,106 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Biomes based on the Koppen climate classification of each place, see {@link KoppenClimateData}.
+ * <p>
+ * Paper asks for the biome of every 4x4x4 cell, but climates do not depend on y. They are therefore looked up once per chunk,
+ * for its 4x4 grid of cells, and the grid is cached by chunk. The tree populator reads the climate of the same grid.
+ * The cell corners are projected through a {@link ProjectionGrid}, which interpolates between exact values.
+ */
 public class CustomBiomeProvider extends BiomeProvider {
 
+    /**
+     * Climate of places outside of the projection, which get the configured default biome.
+     */
+    public static final int NO_CLIMATE = -1;
+
+    private static final int DEFAULT_CLIMATE = 8; // Plains, when the dataset is disabled
+
     private final KoppenClimateData climateData = new KoppenClimateData();
-    double biomeData;
+    private final Cache<Long, byte[]> climateGrids = CacheBuilder.newBuilder()
+            .expireAfterAccess(1L, TimeUnit.MINUTES)
+            .maximumSize(4096)
+            .build();
+    private final boolean useDataset;
+    private volatile Biome defaultBiome;
 
     public static List<Biome> biomeList = new ArrayList<>(Arrays.asList(Biome.OCEAN, Biome.JUNGLE, Biome.BAMBOO_JUNGLE, Biome.SPARSE_JUNGLE, Biome.SAVANNA, Biome.DESERT, Biome.PLAINS, Biome.SUNFLOWER_PLAINS, Biome.BEACH, Biome.WINDSWEPT_GRAVELLY_HILLS,
             Biome.FLOWER_FOREST, Biome.STONY_PEAKS, Biome.SAVANNA_PLATEAU, Biome.WOODED_BADLANDS, Biome.SNOWY_TAIGA, Biome.OLD_GROWTH_SPRUCE_TAIGA, Biome.SWAMP, Biome.OLD_GROWTH_PINE_TAIGA, Biome.FOREST, Biome.DARK_FOREST,
             Biome.TAIGA, Biome.FROZEN_PEAKS, Biome.SNOWY_PLAINS, Biome.ICE_SPIKES));
 
-    private GeographicProjection projection;
+    private final ProjectionGrid projection;
 
     public CustomBiomeProvider(GeographicProjection projection) {
+        this(new ProjectionGrid(projection));
+    }
+
+    public CustomBiomeProvider(ProjectionGrid projection) {
         this.projection = projection;
+        this.useDataset = Terraplusminus.config.getBoolean("biomes.use_dataset");
     }
 
     @NotNull
     @Override
     public Biome getBiome(@NotNull WorldInfo worldInfo, int x, int y, int z) {
-        if (Terraplusminus.config.getBoolean("biomes.use_dataset")) {
-            double[] coords;
-            try {
-                coords = this.projection.toGeo(x, z);
-            } catch (OutOfProjectionBoundsException ignored) {
-                return Biome.PLAINS;
+        if (!this.useDataset) return this.defaultBiome();
+        int climate = this.getClimate(x, z);
+        return climate == NO_CLIMATE ? this.defaultBiome() : koppenDataToBukkitBiome(climate);
+    }
+
+    /**
+     * Gets the Koppen climate of a column, at the resolution of biome cells. Safe to call from any thread.
+     *
+     * @param blockX the x block coordinate
+     * @param blockZ the z block coordinate
+     * @return the climate code, or {@link #NO_CLIMATE} outside of the projection
+     */
+    public int getClimate(int blockX, int blockZ) {
+        if (!this.useDataset) return DEFAULT_CLIMATE;
+        int chunkX = blockX >> 4;
+        int chunkZ = blockZ >> 4;
+        long key = (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+        byte[] grid = this.climateGrids.getIfPresent(key);
+        if (grid == null) {
+            grid = this.climateGrid(chunkX, chunkZ);
+            this.climateGrids.put(key, grid); // Racing threads compute the same grid, no need to synchronize
+        }
+        return grid[(blockX & 15) >> 2 << 2 | (blockZ & 15) >> 2];
+    }
+
+    /**
+     * Looks up the climate of the 4x4 biome cells of a chunk, at the corner of each cell like Paper queries them.
+     */
+    private byte[] climateGrid(int chunkX, int chunkZ) {
+        double[] longitudes = new double[16];
+        double[] latitudes = new double[16];
+        boolean[] inside = new boolean[16];
+        double[] coords = new double[2];
+        for (int i = 0; i < 16; i++) {
+            // We can't be expected to supply a realistic biome for a place that does not exist on Earth
+            inside[i] = this.projection.toGeo(chunkX * 16 + (i >> 2 << 2), chunkZ * 16 + ((i & 3) << 2), coords);
+            if (inside[i]) {
+                longitudes[i] = coords[0];
+                latitudes[i] = coords[1];
             }
-            try {
-                biomeData = this.climateData.getAsync(coords[0], coords[1]).get();
-                return koppenDataToBukkitBiome(biomeData);
-            } catch (OutOfProjectionBoundsException silenced) {
-                // This is not an issue,
-                // we can't be expected to supply a realistic biome for a place that does not exist on Earth
-            } catch (InterruptedException | ExecutionException e) {
-                Terraplusminus.instance.getComponentLogger().warn(
-                        "Exception when generating biome at position {}/{}/{} in world {}",
-                        x, y, z,
-                        worldInfo.getName(),
-                        e
-                );
-            }
-        } else biomeData = 8; // Default is plains for tree generation
-        return parseDefaultBiome();
+        }
+        byte[] grid = new byte[16];
+        this.climateData.getClimates(longitudes, latitudes, grid);
+        for (int i = 0; i < 16; i++) {
+            if (!inside[i]) grid[i] = NO_CLIMATE;
+        }
+        return grid;
     }
 
-    public double getBiome() {
-        return biomeData;
+    private Biome defaultBiome() {
+        Biome biome = this.defaultBiome;
+        if (biome == null) {
+            biome = parseDefaultBiome(); // Registry lookup, only done once
+            this.defaultBiome = biome;
+        }
+        return biome;
     }
 
     @NotNull
@@ -0,0 +1,54 @@
+package de.btegermany.terraplusminus.gen;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.UUID;
+
+/**
+ * Keeps players out of placeholder chunks until the {@link ChunkRepairQueue} has rewritten them.
+ * <p>
+ * Only worlds generated by {@link RealWorldGenerator} have placeholders.
+ * Handling a move is a lookup in {@link ChunkStatusCache} and, for blocked players, one in a small table of message
+ * cooldowns hashed by player. Nothing is allocated or scheduled. Two players sharing a cooldown slot only means one of them
+ * may see the message a bit late.
+ */
+public class PlayerMoveListener implements Listener {
+
+    private static final int MESSAGE_COOLDOWN_TICKS = 80;
+    private static final int COOLDOWN_SLOTS = 1024;
+
+    private final int[] lastMessageTicks = new int[COOLDOWN_SLOTS]; // main thread only
+
+    @EventHandler
+    public void onPlayerMove(PlayerMoveEvent event) {
+        if (event.getFrom().getBlockX() == event.getTo().getBlockX() &&
+                event.getFrom().getBlockZ() == event.getTo().getBlockZ()) {
+            return;
+        }
+
+        Location to = event.getTo();
+        if (to == null) return;
+
+        World world = to.getWorld();
+        if (world == null || !(world.getGenerator() instanceof RealWorldGenerator)) return;
+        int cx = to.getBlockX() >> 4;
+        int cz = to.getBlockZ() >> 4;
+
+        if (ChunkStatusCache.isFailed(world.getName(), cx, cz)) {
+            event.setTo(event.getFrom());
+
+            UUID uuid = event.getPlayer().getUniqueId();
+            int slot = (uuid.hashCode() & 0x7FFFFFFF) % COOLDOWN_SLOTS;
+            int tick = Bukkit.getCurrentTick();
+            if (this.lastMessageTicks[slot] == 0 || tick - this.lastMessageTicks[slot] >= MESSAGE_COOLDOWN_TICKS) {
+                event.getPlayer().sendMessage("§c§l[!] §7The terrain ahead of you is still loading. waiting...");
+                this.lastMessageTicks[slot] = tick;
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package de.btegermany.terraplusminus.gen;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.data.HeightmapCache;
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.gen.tree.TreePopulator;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import de.btegermany.terraplusminus.utils.ConfigurationHelper;
+import lombok.Getter;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorSettings;
+import net.buildtheearth.terraminusminus.substitutes.BlockState;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Bukkit;
+import org.bukkit.HeightMap;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.generator.BiomeProvider;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.min;
+import static net.buildtheearth.terraminusminus.substitutes.ChunkPos.blockToCube;
+import static net.buildtheearth.terraminusminus.substitutes.TerraBukkit.fromBukkitBlockData;
+import static net.buildtheearth.terraminusminus.substitutes.TerraBukkit.toBukkitBlockData;
+import static org.bukkit.Material.*;
+import static org.bukkit.block.Biome.*;
+
+public class RealWorldGenerator extends ChunkGenerator {
+
+    @Getter private final EarthGeneratorSettings settings;
+    @Getter private final int yOffset;
+    @Getter private final TerrainDataService dataService;
+    private Location spawnLocation = null;
+
+    private final LoadingCache<ChunkPos, CachedChunkData> tickCache;
+
+    private final CustomBiomeProvider customBiomeProvider;
+    @Getter @Nullable private final TreePopulator treePopulator;
+    private final Material surfaceMaterial;
+    private final Map<String, Material> materialMapping;
+    private final Map<BlockState, Material> surfaceMaterials = new ConcurrentHashMap<>();
+
+    private static final int PREFETCH_RESERVE = 4; // Requests the prefetcher leaves to the worldgen threads
+
+    private static final Set<Material> GRASS_LIKE_MATERIALS = Set.of(
+            GRASS_BLOCK, DIRT_PATH, FARMLAND, MYCELIUM, SNOW
+    );
+
+    public RealWorldGenerator(int yOffset) {
+        this.dataService = TerrainDataService.acquireDefault();
+        this.yOffset = (yOffset == 0) ? Terraplusminus.config.getInt("terrain_offset.y") : yOffset;
+        this.settings = this.dataService.getSettings();
+        this.customBiomeProvider = new CustomBiomeProvider(this.dataService.getProjectionGrid());
+        this.treePopulator = Terraplusminus.config.getBoolean("generate_trees")
+                ? new TreePopulator(this.customBiomeProvider, this.dataService, this.yOffset)
+                : null;
+
+        this.tickCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(1, TimeUnit.SECONDS)
+                .maximumSize(512)
+                .recordStats()
+                .build(new CacheLoader<>() {
+                    @Override
+                    public CachedChunkData load(@NotNull ChunkPos pos) {
+                        CachedChunkData data = fetchFromPrimary(pos);
+                        if (data == null) throw new IllegalStateException("Terrain data not available yet"); // Not cached, try again next time
+                        return data;
+                    }
+                });
+        GenerationMetrics.registerTickCache(this.tickCache);
+
+        this.surfaceMaterial = ConfigurationHelper.getMaterial(Terraplusminus.config, "surface_material", GRASS_BLOCK);
+        this.materialMapping = Map.of(
+                "minecraft:bricks", ConfigurationHelper.getMaterial(Terraplusminus.config, "building_outlines_material", BRICKS),
+                "minecraft:gray_concrete", ConfigurationHelper.getMaterial(Terraplusminus.config, "road_material", GRAY_CONCRETE_POWDER),
+                "minecraft:dirt_path", ConfigurationHelper.getMaterial(Terraplusminus.config, "path_material", MOSS_BLOCK)
+        );
+        this.materialMapping.forEach((block, material) ->
+                this.surfaceMaterials.put(fromBukkitBlockData(Bukkit.createBlockData(block)), material));
+    }
+
+    /**
+     * Maps a surface block from the terrain data to the material to place.
+     * Each distinct block state is only resolved once, later lookups neither build strings nor block data.
+     */
+    private Material resolveMaterial(BlockState state) {
+        Material material = this.surfaceMaterials.get(state);
+        if (material != null) return material;
+        material = this.materialMapping.get(state.getBlock().toString());
+        if (material == null) material = toBukkitBlockData(state).getMaterial();
+        this.surfaceMaterials.putIfAbsent(state, material);
+        return material;
+    }
+
+
+    /**
+     * Gets the data of a chunk without ever waiting for the network.
+     * If the data is not there yet, it is requested in the background and null is returned.
+     */
+    @Nullable
+    private CachedChunkData fetchFromPrimary(ChunkPos pos) {
+        CompletableFuture<CachedChunkData> future = this.dataService.request(pos, 0);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            // Upstream failures are accounted for by the rate limiter when the future completes
+            return null;
+        }
+        return future.getNow(null);
+    }
+
+    /**
+     * Starts fetching the data of a chunk in the background if it is not already cached,
+     * without using the part of the request budget that is reserved for chunks Paper is generating right now.
+     *
+     * @param pos the chunk to prefetch
+     * @return false if the request budget is exhausted, true otherwise
+     */
+    public boolean prefetch(ChunkPos pos) {
+        return this.dataService.request(pos, PREFETCH_RESERVE) != null;
+    }
+
+    /**
+     * Releases this generator's reference to the shared terrain data, once its world is unloaded.
+     */
+    public void close() {
+        GenerationMetrics.unregisterTickCache(this.tickCache);
+        this.dataService.release();
+    }
+
+    @Override
+    public void generateNoise(@NotNull WorldInfo worldInfo, @NotNull Random random, int chunkX, int chunkZ, @NotNull ChunkData chunkData) {
+        long start = System.nanoTime();
+        try {
+            this.writeTerrain(worldInfo, chunkX, chunkZ, chunkData);
+        } finally {
+            GenerationMetrics.NOISE.recordSince(start);
+        }
+    }
+
+    private void writeTerrain(WorldInfo worldInfo, int chunkX, int chunkZ, ChunkData chunkData) {
+        ChunkPos pos = new ChunkPos(chunkX, chunkZ);
+        CachedChunkData terraData = null;
+        try {
+            terraData = tickCache.getUnchecked(pos);
+        } catch (Exception ignored) {}
+        if (terraData != null && this.treePopulator != null) {
+            this.treePopulator.planTrees(worldInfo, pos, terraData); // Here rather than in the tick cache, which does not know the world seed
+        }
+
+        int minWorldY = worldInfo.getMinHeight();
+        int maxWorldY = worldInfo.getMaxHeight();
+
+        if (terraData == null) {
+            // Flat placeholder, rewritten by the repair queue once the data is there
+            if (this.yOffset > minWorldY) {
+                chunkData.setRegion(0, minWorldY, 0, 16, min(this.yOffset, maxWorldY), 16, STONE);
+            }
+            GenerationMetrics.PLACEHOLDER_CHUNKS.increment();
+            ChunkRepairQueue repairQueue = ChunkRepairQueue.get();
+            if (repairQueue != null) {
+                repairQueue.add(worldInfo.getName(), chunkX, chunkZ);
+            }
+            return;
+        }
+
+        GenerationMetrics.CHUNKS_GENERATED.increment();
+        int minSurfaceCubeY = blockToCube(minWorldY - this.yOffset);
+        int maxWorldCubeY = blockToCube(maxWorldY - this.yOffset);
+
+        if (terraData.aboveSurface(minSurfaceCubeY)) return;
+
+        while (minSurfaceCubeY < maxWorldCubeY && terraData.belowSurface(minSurfaceCubeY)) {
+            minSurfaceCubeY++;
+        }
+
+        if (minSurfaceCubeY >= maxWorldCubeY) {
+            chunkData.setRegion(0, minWorldY, 0, 16, maxWorldY, 16, STONE);
+        } else {
+            ColumnWriter.get().write(terraData, this.yOffset, minWorldY, maxWorldY, chunkData);
+        }
+    }
+
+    @Override
+    public void generateSurface(@NotNull WorldInfo worldInfo, @NotNull Random random, int chunkX, int chunkZ, @NotNull ChunkData chunkData) {
+        long start = System.nanoTime();
+        try {
+            this.writeSurface(worldInfo, chunkX, chunkZ, chunkData);
+        } finally {
+            GenerationMetrics.SURFACE.recordSince(start);
+        }
+    }
+
+    private void writeSurface(WorldInfo worldInfo, int chunkX, int chunkZ, ChunkData chunkData) {
+        CachedChunkData terraData = null;
+        try {
+            terraData = tickCache.getUnchecked(new ChunkPos(chunkX, chunkZ));
+        } catch (Exception ignored) {}
+
+        if (terraData == null) return;
+
+        final int minWorldY = worldInfo.getMinHeight();
+        final int maxWorldY = worldInfo.getMaxHeight();
+
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int groundY = terraData.groundHeight(x, z) + this.yOffset;
+                if (groundY < minWorldY || groundY >= maxWorldY) continue;
+
+                BlockState state = terraData.surfaceBlock(x, z);
+                Biome biome = needsBiome(state, groundY) ? chunkData.getBiome(x, groundY, z) : null;
+                // Same test as the noise pass uses to place water, no need to read the block back
+                boolean underWater = groundY + 1 < maxWorldY && terraData.waterHeight(x, z) > terraData.groundHeight(x, z);
+                chunkData.setBlock(x, groundY, z, this.surfaceMaterial(state, groundY, biome, underWater));
+            }
+        }
+    }
+
+    /**
+     * @return whether {@link #surfaceMaterial(BlockState, int, Biome, boolean)} needs the biome of the column
+     */
+    static boolean needsBiome(@Nullable BlockState state, int groundY) {
+        return state == null && groundY < 7500;
+    }
+
+    /**
+     * Picks the block placed on top of a column.
+     *
+     * @param state      the surface block from the terrain data, if any
+     * @param groundY    the height of the ground
+     * @param biome      the biome of the column, only needed if {@link #needsBiome(BlockState, int)}
+     * @param underWater whether the column is under water
+     * @return the surface material
+     */
+    Material surfaceMaterial(@Nullable BlockState state, int groundY, @Nullable Biome biome, boolean underWater) {
+        Material material;
+        if (state != null) {
+            material = this.resolveMaterial(state);
+        } else if (groundY >= 7500) {
+            material = STONE;
+        } else if (biome == DESERT) {
+            material = SAND;
+        } else if (biome == SNOWY_SLOPES || biome == SNOWY_PLAINS) {
+            material = SNOW_BLOCK;
+        } else {
+            material = this.surfaceMaterial;
+        }
+
+        if (underWater && GRASS_LIKE_MATERIALS.contains(material)) {
+            material = DIRT;
+        }
+        return material;
+    }
+
+    @Override
+    public int getBaseHeight(@NotNull WorldInfo worldInfo, @NotNull Random random, int x, int z, @NotNull HeightMap heightMap) {
+        boolean ground = heightMap == HeightMap.OCEAN_FLOOR || heightMap == HeightMap.OCEAN_FLOOR_WG;
+        int height = this.dataService.getHeights().height(x, z, ground);
+        if (height != HeightmapCache.MISSING) return height + this.yOffset;
+
+        // Not in the height cache does not mean not loaded, e.g. when it was evicted but the chunk is still stored
+        CachedChunkData data = this.fetchFromPrimary(new ChunkPos(blockToCube(x), blockToCube(z)));
+        if (data != null) {
+            return (ground ? data.groundHeight(x & 15, z & 15) : data.surfaceHeight(x & 15, z & 15)) + this.yOffset;
+        }
+        // Requested in the background, heights are cached as soon as the data arrives
+        return this.yOffset;
+    }
+
+    @Override public BiomeProvider getDefaultBiomeProvider(@NotNull WorldInfo worldInfo) { return this.customBiomeProvider; }
+    @Override public @NotNull List<BlockPopulator> getDefaultPopulators(@NotNull World world) {
+        return this.treePopulator == null ? List.of() : List.of(this.treePopulator);
+    }
+    public void generateBedrock(@NotNull WorldInfo worldInfo, @NotNull Random random, int x, int z, @NotNull ChunkData chunkData) {}
+    public void generateCaves(@NotNull WorldInfo worldInfo, @NotNull Random random, int x, int z, @NotNull ChunkData chunkData) {}
+
+    @Nullable public Location getFixedSpawnLocation(@NotNull World world, @NotNull Random random) {
+        if (spawnLocation == null) spawnLocation = new Location(world, 3517417, 58, -5288234);
+        return spawnLocation;
+    }
+
+    public boolean shouldGenerateNoise() { return false; }
+    public boolean shouldGenerateSurface() { return false; }
+    public boolean shouldGenerateBedrock() { return false; }
+    public boolean shouldGenerateCaves() { return false; }
+    public boolean shouldGenerateDecorations() { return false; }
+    public boolean shouldGenerateMobs() { return false; }
+    public boolean shouldGenerateStructures() { return false; }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+package de.btegermany.terraplusminus.gen;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Warms the generator caches for the terrain players are heading to, so that the data is already there
+ * when Paper asks {@link RealWorldGenerator} to generate those chunks.
+ * <p>
+ * Every {@value #INTERVAL_TICKS} ticks, each player's position is sampled to estimate their velocity.
+ * Players moving fast enough get a cone of chunks prefetched in front of them, starting at the edge of their view distance
+ * and going as far as they will travel in the configured lookahead time.
+ * The prefetcher never takes more than the generator's spare request budget, see {@link RealWorldGenerator#prefetch(ChunkPos)}.
+ */
+public class TerrainPrefetcher implements Listener {
+
+    private static final long INTERVAL_TICKS = 10L;
+    private static final double MIN_SPEED = 0.4; // blocks per tick, a bit faster than sprinting
+    private static final double MAX_SPEED = 10.0; // anything faster is a teleport
+    private static final double CONE_HALF_ANGLE_TANGENT = Math.tan(Math.toRadians(30));
+    private static final int MAX_LOOKAHEAD_CHUNKS = 48;
+    private static final int MAX_CHUNKS_PER_PLAYER = 64;
+
+    private final Plugin plugin;
+    private final double lookaheadTicks;
+    private final Map<UUID, PlayerState> states = new HashMap<>();
+
+    public TerrainPrefetcher(Plugin plugin) {
+        this.plugin = plugin;
+        this.lookaheadTicks = Terraplusminus.config.getDouble("prefetch.lookahead_seconds", 8.0) * 20;
+    }
+
+    public void start() {
+        Bukkit.getScheduler().runTaskTimer(this.plugin, this::sample, INTERVAL_TICKS, INTERVAL_TICKS);
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        this.states.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void sample() {
+        List<Runnable> prefetches = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            Location location = player.getLocation();
+            if (!(location.getWorld().getGenerator() instanceof RealWorldGenerator generator)) {
+                this.states.remove(player.getUniqueId());
+                continue;
+            }
+
+            PlayerState state = this.states.computeIfAbsent(player.getUniqueId(), uuid -> new PlayerState());
+            double x = location.getX();
+            double z = location.getZ();
+            boolean sameWorld = location.getWorld().getUID().equals(state.world);
+            double dx = (x - state.x) / INTERVAL_TICKS;
+            double dz = (z - state.z) / INTERVAL_TICKS;
+            boolean turnedAround = dx * state.dx + dz * state.dz < 0;
+
+            state.world = location.getWorld().getUID();
+            state.x = x;
+            state.z = z;
+            state.dx = dx;
+            state.dz = dz;
+
+            double speed = Math.sqrt(dx * dx + dz * dz);
+            if (!sameWorld || turnedAround || speed < MIN_SPEED || speed > MAX_SPEED) continue;
+
+            int viewDistance = player.getViewDistance();
+            int lookahead = (int) Math.min(MAX_LOOKAHEAD_CHUNKS, Math.ceil(speed * this.lookaheadTicks / 16));
+            List<ChunkPos> cone = cone(x, z, dx / speed, dz / speed, viewDistance, viewDistance + lookahead);
+            prefetches.add(() -> {
+                for (ChunkPos pos : cone) {
+                    if (!generator.prefetch(pos)) break; // Out of budget, the next pass will continue from the nearest chunks
+                }
+            });
+        }
+        if (!prefetches.isEmpty()) {
+            Bukkit.getScheduler().runTaskAsynchronously(this.plugin, () -> prefetches.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * Lists the chunks in a cone going from the given block position in the given (normalized) direction,
+     * nearest first.
+     */
+    private static List<ChunkPos> cone(double x, double z, double dirX, double dirZ, int fromChunks, int toChunks) {
+        List<ChunkPos> chunks = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (int distance = fromChunks; distance <= toChunks && chunks.size() < MAX_CHUNKS_PER_PLAYER; distance++) {
+            double centerX = x + dirX * distance * 16;
+            double centerZ = z + dirZ * distance * 16;
+            int halfWidth = (int) Math.ceil(distance * CONE_HALF_ANGLE_TANGENT);
+            for (int side = 0; side <= halfWidth; side++) {
+                for (int sign = side == 0 ? 1 : -1; sign <= 1; sign += 2) {
+                    // Step sideways, perpendicular to the heading
+                    int chunkX = (int) Math.floor((centerX - dirZ * side * sign * 16) / 16);
+                    int chunkZ = (int) Math.floor((centerZ + dirX * side * sign * 16) / 16);
+                    if (seen.add(((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL))) {
+                        chunks.add(new ChunkPos(chunkX, chunkZ));
+                    }
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static class PlayerState {
+        UUID world;
+        double x;
+        double z;
+        double dx;
+        double dz;
+    }
+
+}
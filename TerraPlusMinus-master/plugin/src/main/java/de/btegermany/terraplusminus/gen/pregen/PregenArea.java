@@ -0,0 +1,189 @@
+package de.btegermany.terraplusminus.gen.pregen;
+
+import lombok.Getter;
+import net.buildtheearth.terraminusminus.projection.GeographicProjection;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A geographic area to pre-generate, projected to a polygon in block coordinates.
+ * <p>
+ * The projection is not linear, so the edges of bounding boxes are sampled instead of only projecting their corners.
+ */
+public final class PregenArea {
+
+    public static final String USAGE = "bbox <minLat> <minLon> <maxLat> <maxLon> | polygon <lat,lon> <lat,lon> <lat,lon>... | radius <lat> <lon> <blocks>";
+
+    private static final int SAMPLES_PER_EDGE = 32;
+    private static final int CIRCLE_VERTICES = 64;
+
+    private final double[] xs;
+    private final double[] zs;
+    @Getter private final int minChunkX;
+    @Getter private final int minChunkZ;
+    private final int maxChunkX;
+    private final int maxChunkZ;
+
+    private PregenArea(double[] xs, double[] zs) {
+        this.xs = xs;
+        this.zs = zs;
+        double minX = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < xs.length; i++) {
+            minX = Math.min(minX, xs[i]);
+            minZ = Math.min(minZ, zs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxZ = Math.max(maxZ, zs[i]);
+        }
+        this.minChunkX = (int) Math.floor(minX) >> 4;
+        this.minChunkZ = (int) Math.floor(minZ) >> 4;
+        this.maxChunkX = (int) Math.floor(maxX) >> 4;
+        this.maxChunkZ = (int) Math.floor(maxZ) >> 4;
+    }
+
+    /**
+     * Parses an area from command arguments, see {@link #USAGE}.
+     *
+     * @param projection the projection of the world, including its terrain offset
+     * @param args       the arguments, starting with the shape
+     * @return the area
+     * @throws IllegalArgumentException       if the arguments are invalid, with a message fit for the command sender
+     * @throws OutOfProjectionBoundsException if a point of the area is outside the projection
+     */
+    public static PregenArea parse(@NotNull GeographicProjection projection, @NotNull List<String> args) throws OutOfProjectionBoundsException {
+        if (args.isEmpty()) throw new IllegalArgumentException("Missing area, use " + USAGE);
+        return switch (args.getFirst().toLowerCase(Locale.ROOT)) {
+            case "bbox" -> {
+                if (args.size() != 5) throw new IllegalArgumentException("Usage: bbox <minLat> <minLon> <maxLat> <maxLon>");
+                double minLat = parseDouble(args.get(1));
+                double minLon = parseDouble(args.get(2));
+                double maxLat = parseDouble(args.get(3));
+                double maxLon = parseDouble(args.get(4));
+                if (minLat >= maxLat || minLon >= maxLon) throw new IllegalArgumentException("The minimum coordinates must be below the maximum ones");
+                yield boundingBox(projection, minLat, minLon, maxLat, maxLon);
+            }
+            case "polygon" -> {
+                if (args.size() < 4) throw new IllegalArgumentException("A polygon needs at least three <lat,lon> points");
+                double[] xs = new double[args.size() - 1];
+                double[] zs = new double[args.size() - 1];
+                for (int i = 1; i < args.size(); i++) {
+                    String[] point = args.get(i).split(",");
+                    if (point.length != 2) throw new IllegalArgumentException("Invalid point " + args.get(i) + ", use <lat,lon>");
+                    double[] projected = projection.fromGeo(parseDouble(point[1]), parseDouble(point[0]));
+                    xs[i - 1] = projected[0];
+                    zs[i - 1] = projected[1];
+                }
+                yield new PregenArea(xs, zs);
+            }
+            case "radius" -> {
+                if (args.size() != 4) throw new IllegalArgumentException("Usage: radius <lat> <lon> <blocks>");
+                double[] center = projection.fromGeo(parseDouble(args.get(2)), parseDouble(args.get(1)));
+                double radius = parseDouble(args.get(3));
+                if (radius < 1) throw new IllegalArgumentException("The radius must be at least one block");
+                double[] xs = new double[CIRCLE_VERTICES];
+                double[] zs = new double[CIRCLE_VERTICES];
+                for (int i = 0; i < CIRCLE_VERTICES; i++) {
+                    double angle = 2 * Math.PI * i / CIRCLE_VERTICES;
+                    xs[i] = center[0] + radius * Math.cos(angle);
+                    zs[i] = center[1] + radius * Math.sin(angle);
+                }
+                yield new PregenArea(xs, zs);
+            }
+            default -> throw new IllegalArgumentException("Unknown area " + args.getFirst() + ", use " + USAGE);
+        };
+    }
+
+    private static PregenArea boundingBox(GeographicProjection projection, double minLat, double minLon, double maxLat, double maxLon) throws OutOfProjectionBoundsException {
+        double[] lats = new double[4 * SAMPLES_PER_EDGE];
+        double[] lons = new double[4 * SAMPLES_PER_EDGE];
+        for (int i = 0; i < SAMPLES_PER_EDGE; i++) {
+            double t = (double) i / SAMPLES_PER_EDGE;
+            // Counter-clockwise from the south-west corner
+            lats[i] = minLat;
+            lons[i] = minLon + t * (maxLon - minLon);
+            lats[SAMPLES_PER_EDGE + i] = minLat + t * (maxLat - minLat);
+            lons[SAMPLES_PER_EDGE + i] = maxLon;
+            lats[2 * SAMPLES_PER_EDGE + i] = maxLat;
+            lons[2 * SAMPLES_PER_EDGE + i] = maxLon - t * (maxLon - minLon);
+            lats[3 * SAMPLES_PER_EDGE + i] = maxLat - t * (maxLat - minLat);
+            lons[3 * SAMPLES_PER_EDGE + i] = minLon;
+        }
+        double[] xs = new double[lats.length];
+        double[] zs = new double[lats.length];
+        for (int i = 0; i < lats.length; i++) {
+            double[] projected = projection.fromGeo(lons[i], lats[i]);
+            xs[i] = projected[0];
+            zs[i] = projected[1];
+        }
+        return new PregenArea(xs, zs);
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.replace("°", ""));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number: " + value);
+        }
+    }
+
+    /**
+     * Finds the chunks of a row whose center is inside the area, by intersecting the row with the edges of the polygon.
+     * This costs one pass over the vertices per row, instead of one per chunk.
+     *
+     * @param chunkZ the z coordinate of the row
+     * @return the inside chunks as sorted, disjoint and inclusive ranges of x coordinates: from, to, from, to...
+     */
+    public int[] rowSpans(int chunkZ) {
+        double z = (chunkZ << 4) + 8;
+        double[] crossings = new double[this.xs.length];
+        int count = 0;
+        for (int i = 0, j = this.xs.length - 1; i < this.xs.length; j = i++) {
+            if ((this.zs[i] > z) != (this.zs[j] > z)) {
+                crossings[count++] = (this.xs[j] - this.xs[i]) * (z - this.zs[i]) / (this.zs[j] - this.zs[i]) + this.xs[i];
+            }
+        }
+        Arrays.sort(crossings, 0, count);
+        // A center is inside when an odd number of crossings lie east of it, i.e. between crossings 2k (included) and 2k + 1
+        int[] spans = new int[count];
+        int length = 0;
+        for (int k = 0; k + 1 < count; k += 2) {
+            int from = Math.max(this.minChunkX, (int) Math.ceil((crossings[k] - 8) / 16));
+            int to = Math.min(this.maxChunkX, (int) Math.ceil((crossings[k + 1] - 8) / 16) - 1);
+            if (from > to) continue;
+            spans[length++] = from;
+            spans[length++] = to;
+        }
+        return Arrays.copyOf(spans, length);
+    }
+
+    /**
+     * @return how many chunks of a row are inside the area
+     */
+    public int countInRow(int chunkZ) {
+        int[] spans = this.rowSpans(chunkZ);
+        int count = 0;
+        for (int i = 0; i < spans.length; i += 2) {
+            count += spans[i + 1] - spans[i] + 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return the width of the bounding box of the area, in chunks
+     */
+    public int widthInChunks() {
+        return this.maxChunkX - this.minChunkX + 1;
+    }
+
+    /**
+     * @return the length of the bounding box of the area, in chunks
+     */
+    public int lengthInChunks() {
+        return this.maxChunkZ - this.minChunkZ + 1;
+    }
+
+}
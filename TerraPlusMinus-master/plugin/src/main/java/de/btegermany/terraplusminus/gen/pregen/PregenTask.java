@@ -0,0 +1,358 @@
+package de.btegermany.terraplusminus.gen.pregen;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.gen.RealWorldGenerator;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.projection.OutOfProjectionBoundsException;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Pre-generates the chunks of a {@link PregenArea}, see {@code /tplus pregen}.
+ * <p>
+ * Chunks are visited row by row over the bounding box of the area, each row being intersected with the area once
+ * so the chunks outside of it are skipped without testing them one by one. Chunks inside are checked for having been generated
+ * already within a small budget per tick, so resuming a mostly done area takes a while rather than stalling the server.
+ * The terrain data of a chunk is fetched first, and the chunk is only generated once it is there,
+ * so pre-generation does not produce placeholders.
+ * Chunks whose data could not be fetched are retried a few times, waiting longer after each failure.
+ * Generated chunks are unloaded right away to keep memory bounded.
+ * <p>
+ * Progress is checkpointed to the plugin directory as the index of the first chunk that is not done yet,
+ * so an interrupted task can be resumed. All state is only accessed from the main thread.
+ */
+public final class PregenTask {
+
+    private static final Map<String, PregenTask> TASKS = new HashMap<>();
+
+    // isChunkGenerated reads region file headers on the main thread, which is slow on a cold disk
+    private static final int MAX_CELLS_PER_TICK = 128;
+    private static final long SCAN_BUDGET_NANOS = 1_000_000L;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_TICKS = 20L; // Doubled after each failed attempt
+    private static final long REPORT_INTERVAL_TICKS = 20L * 10;
+    private static final long CHECKPOINT_INTERVAL_TICKS = 20L * 30;
+
+    private final World world;
+    private final RealWorldGenerator generator;
+    private final List<String> areaArgs;
+    private final PregenArea area;
+    private final CommandSender reporter;
+    private final int parallelism;
+    private final Path checkpointFile;
+    private final long cells;
+    private final long total;
+
+    private long cursor;
+    private long done;
+    private long doneThisRun;
+    private long generatedThisRun;
+    private long failed;
+    private final TreeSet<Long> inFlight = new TreeSet<>();
+    private final Queue<Long> waitingForBudget = new ArrayDeque<>();
+    private final Map<Long, Integer> attempts = new HashMap<>();
+    private final Map<Long, Long> retryTicks = new HashMap<>(); // Chunk index to the tick of its next attempt
+    private int spansRow = -1;
+    private int[] spans;
+
+    private final long startNanos = System.nanoTime();
+    private final long startFetches = GenerationMetrics.UPSTREAM_FETCHES.sum();
+    private long ticks;
+    private BukkitTask bukkitTask;
+
+    private PregenTask(World world, RealWorldGenerator generator, List<String> areaArgs, PregenArea area, CommandSender reporter, long cursor) {
+        this.world = world;
+        this.generator = generator;
+        this.areaArgs = List.copyOf(areaArgs);
+        this.area = area;
+        this.reporter = reporter;
+        this.parallelism = Math.max(1, Terraplusminus.config.getInt("pregen.parallelism", 8));
+        this.checkpointFile = checkpointFile(world);
+        this.cells = (long) area.widthInChunks() * area.lengthInChunks();
+        this.cursor = Math.min(cursor, this.cells);
+
+        long total = 0;
+        int width = area.widthInChunks();
+        for (int row = 0; row < area.lengthInChunks(); row++) {
+            int[] spans = area.rowSpans(area.getMinChunkZ() + row);
+            long rowStart = (long) row * width - area.getMinChunkX();
+            for (int i = 0; i < spans.length; i += 2) {
+                total += spans[i + 1] - spans[i] + 1;
+                this.done += Math.max(0L, Math.min(rowStart + spans[i + 1] + 1, this.cursor) - (rowStart + spans[i]));
+            }
+        }
+        this.total = total;
+    }
+
+    /**
+     * Starts pre-generating an area of a world.
+     *
+     * @param world    the world, which must use {@link RealWorldGenerator}
+     * @param areaArgs the area, as described by {@link PregenArea#USAGE}
+     * @param reporter who to send progress reports to
+     * @throws IllegalArgumentException       if the world or the area are invalid, with a message fit for the command sender
+     * @throws OutOfProjectionBoundsException if the area is outside the projection
+     */
+    public static void start(@NotNull World world, @NotNull List<String> areaArgs, @NotNull CommandSender reporter) throws OutOfProjectionBoundsException {
+        start(world, areaArgs, reporter, 0);
+    }
+
+    /**
+     * Resumes the last checkpointed task of a world.
+     *
+     * @throws IllegalArgumentException       if there is nothing to resume
+     * @throws OutOfProjectionBoundsException if the area is outside the projection
+     */
+    public static void resume(@NotNull World world, @NotNull CommandSender reporter) throws OutOfProjectionBoundsException {
+        Path file = checkpointFile(world);
+        if (!Files.exists(file)) throw new IllegalArgumentException("There is no pre-generation to resume in " + world.getName());
+        YamlConfiguration checkpoint = new YamlConfiguration();
+        try {
+            checkpoint.loadFromString(Files.readString(file, StandardCharsets.UTF_8));
+        } catch (IOException | InvalidConfigurationException e) {
+            Terraplusminus.instance.getComponentLogger().error("Failed to read pre-generation checkpoint {}", file, e);
+            throw new IllegalArgumentException("The pre-generation checkpoint of " + world.getName() + " could not be read");
+        }
+        start(world, checkpoint.getStringList("area"), reporter, checkpoint.getLong("next_index"));
+    }
+
+    private static void start(World world, List<String> areaArgs, CommandSender reporter, long cursor) throws OutOfProjectionBoundsException {
+        if (TASKS.containsKey(world.getName())) throw new IllegalArgumentException("A pre-generation is already running in " + world.getName());
+        if (!(world.getGenerator() instanceof RealWorldGenerator generator)) {
+            throw new IllegalArgumentException("The world generator must be set to Terraplusminus");
+        }
+        // The generator's projection already includes the horizontal terrain offset
+        PregenArea area = PregenArea.parse(generator.getSettings().projection(), areaArgs);
+        PregenTask task = new PregenTask(world, generator, areaArgs, area, reporter, cursor);
+        TASKS.put(world.getName(), task);
+        task.bukkitTask = Bukkit.getScheduler().runTaskTimer(Terraplusminus.instance, task::tick, 1L, 1L);
+        task.report("Pre-generating " + task.total + " chunks in " + world.getName() + " (" + task.done + " already done)");
+    }
+
+    /**
+     * Stops the task running in a world, keeping its checkpoint.
+     *
+     * @return whether there was a task to stop
+     */
+    public static boolean stop(@NotNull World world) {
+        PregenTask task = TASKS.remove(world.getName());
+        if (task == null) return false;
+        task.bukkitTask.cancel();
+        task.saveCheckpoint(Terraplusminus.instance.isEnabled());
+        return true;
+    }
+
+    /**
+     * Stops all tasks, to be called when the plugin is disabled.
+     */
+    public static void stopAll() {
+        for (World world : TASKS.values().stream().map(task -> task.world).toList()) {
+            stop(world);
+        }
+    }
+
+    /**
+     * @return the status of the task running in a world, or null if there is none
+     */
+    @Nullable
+    public static String status(@NotNull World world) {
+        PregenTask task = TASKS.get(world.getName());
+        return task == null ? null : task.describeProgress();
+    }
+
+    private void tick() {
+        this.ticks++;
+
+        // Failed chunks whose delay is over are retried with the others that could not be requested earlier
+        if (!this.retryTicks.isEmpty()) {
+            Iterator<Map.Entry<Long, Long>> retries = this.retryTicks.entrySet().iterator();
+            while (retries.hasNext()) {
+                Map.Entry<Long, Long> retry = retries.next();
+                if (retry.getValue() > this.ticks) continue;
+                retries.remove();
+                this.waitingForBudget.add(retry.getKey());
+            }
+        }
+
+        // Chunks that could not be requested earlier go first
+        while (!this.waitingForBudget.isEmpty()) {
+            if (!this.request(this.waitingForBudget.peek())) break;
+            this.waitingForBudget.poll();
+        }
+
+        long deadline = System.nanoTime() + SCAN_BUDGET_NANOS;
+        for (int scanned = 0; scanned < MAX_CELLS_PER_TICK && this.waitingForBudget.isEmpty()
+                && this.inFlight.size() < this.parallelism && System.nanoTime() < deadline; scanned++) {
+            this.skipOutside();
+            if (this.cursor >= this.cells) break;
+            long index = this.cursor++;
+            if (this.world.isChunkGenerated(this.chunkX(index), this.chunkZ(index))) {
+                this.done++;
+                this.doneThisRun++;
+                continue;
+            }
+            this.inFlight.add(index);
+            if (!this.request(index)) this.waitingForBudget.add(index);
+        }
+
+        if (this.cursor >= this.cells && this.inFlight.isEmpty()) {
+            TASKS.remove(this.world.getName());
+            this.bukkitTask.cancel();
+            this.report("Pre-generation of " + this.world.getName() + " finished. " + this.describeProgress());
+            this.deleteCheckpoint();
+            return;
+        }
+        if (this.ticks % REPORT_INTERVAL_TICKS == 0) this.report(this.describeProgress());
+        if (this.ticks % CHECKPOINT_INTERVAL_TICKS == 0) this.saveCheckpoint(true);
+    }
+
+    /**
+     * Requests the terrain data of a chunk, and generates it once the data is there.
+     *
+     * @return false if the request budget is exhausted
+     */
+    private boolean request(long index) {
+        CompletableFuture<CachedChunkData> future = this.generator.getDataService().request(new ChunkPos(this.chunkX(index), this.chunkZ(index)), 0);
+        if (future == null) return false;
+        future.whenComplete((data, error) -> Bukkit.getScheduler().runTask(Terraplusminus.instance, () -> {
+            if (TASKS.get(this.world.getName()) != this) return; // Stopped in the meantime
+            if (error != null || data == null) {
+                int attempt = this.attempts.merge(index, 1, Integer::sum);
+                if (attempt < MAX_ATTEMPTS) {
+                    // Still in flight, so the checkpoint does not skip it
+                    this.retryTicks.put(index, this.ticks + (RETRY_DELAY_TICKS << (attempt - 1)));
+                    return;
+                }
+            }
+            if (error != null || data == null) this.failed++; // Generate it anyway, the repair queue will take care of it
+            this.generate(index);
+        }));
+        return true;
+    }
+
+    private void generate(long index) {
+        int chunkX = this.chunkX(index);
+        int chunkZ = this.chunkZ(index);
+        this.world.getChunkAtAsync(chunkX, chunkZ, true).whenComplete((chunk, error) -> {
+            if (error != null) {
+                Terraplusminus.instance.getComponentLogger().warn("Failed to pre-generate chunk {} {} in {}", chunkX, chunkZ, this.world.getName(), error);
+            }
+            this.world.unloadChunkRequest(chunkX, chunkZ);
+            this.inFlight.remove(index);
+            this.attempts.remove(index);
+            this.done++;
+            this.doneThisRun++;
+            this.generatedThisRun++;
+        });
+    }
+
+    private String describeProgress() {
+        double seconds = Math.max(1e-3, (System.nanoTime() - this.startNanos) / 1e9);
+        double chunksPerSecond = this.doneThisRun / seconds;
+        long fetches = GenerationMetrics.UPSTREAM_FETCHES.sum() - this.startFetches;
+        String eta = chunksPerSecond > 0
+                ? formatDuration(Duration.ofSeconds((long) ((this.total - this.done) / chunksPerSecond)))
+                : "unknown";
+        return String.format("%d/%d chunks (%.1f%%), %.1f chunks/s, %.2f fetches per generated chunk, %d failed, ETA %s",
+                this.done, this.total, this.total == 0 ? 100d : 100d * this.done / this.total, chunksPerSecond,
+                this.generatedThisRun == 0 ? 0d : (double) fetches / this.generatedThisRun, this.failed, eta);
+    }
+
+    private static String formatDuration(Duration duration) {
+        return String.format("%d:%02d:%02d", duration.toHours(), duration.toMinutesPart(), duration.toSecondsPart());
+    }
+
+    private void report(String message) {
+        Terraplusminus.instance.getComponentLogger().info("[pregen] {}", message);
+        if (this.reporter instanceof Player player && player.isOnline()) {
+            player.sendMessage(Terraplusminus.config.getString("prefix") + "§7" + message);
+        }
+    }
+
+    private void saveCheckpoint(boolean async) {
+        YamlConfiguration checkpoint = new YamlConfiguration();
+        checkpoint.set("area", this.areaArgs);
+        // Everything before the first chunk still in flight is done
+        checkpoint.set("next_index", this.inFlight.isEmpty() ? this.cursor : this.inFlight.first());
+        String content = checkpoint.saveToString();
+        Runnable write = () -> {
+            try {
+                Files.createDirectories(this.checkpointFile.getParent());
+                Files.writeString(this.checkpointFile, content, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Terraplusminus.instance.getComponentLogger().error("Failed to save pre-generation checkpoint {}", this.checkpointFile, e);
+            }
+        };
+        if (async) {
+            Bukkit.getScheduler().runTaskAsynchronously(Terraplusminus.instance, write);
+        } else {
+            write.run(); // The plugin is being disabled, no more tasks can be scheduled
+        }
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(this.checkpointFile);
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().warn("Failed to delete pre-generation checkpoint {}", this.checkpointFile, e);
+        }
+    }
+
+    private static Path checkpointFile(World world) {
+        return Terraplusminus.instance.getDataPath().resolve("pregen").resolve(world.getName() + ".yml");
+    }
+
+    /**
+     * Moves the cursor to the next chunk inside the area, or to the end.
+     */
+    private void skipOutside() {
+        int width = this.area.widthInChunks();
+        while (this.cursor < this.cells) {
+            int row = (int) (this.cursor / width);
+            if (row != this.spansRow) {
+                this.spans = this.area.rowSpans(this.area.getMinChunkZ() + row);
+                this.spansRow = row;
+            }
+            int x = this.chunkX(this.cursor);
+            for (int i = 0; i < this.spans.length; i += 2) {
+                if (x <= this.spans[i + 1]) {
+                    this.cursor += Math.max(0, this.spans[i] - x);
+                    return;
+                }
+            }
+            this.cursor = (long) (row + 1) * width;
+        }
+    }
+
+    private int chunkX(long index) {
+        return this.area.getMinChunkX() + (int) (index % this.area.widthInChunks());
+    }
+
+    private int chunkZ(long index) {
+        return this.area.getMinChunkZ() + (int) (index / this.area.widthInChunks());
+    }
+
+}
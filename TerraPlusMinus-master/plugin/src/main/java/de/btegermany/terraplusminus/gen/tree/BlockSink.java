@@ -0,0 +1,14 @@
+package de.btegermany.terraplusminus.gen.tree;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Where trees are written to: the region being populated, or a loaded world when a placeholder chunk is repaired.
+ */
+@FunctionalInterface
+public interface BlockSink {
+
+    void setType(int x, int y, int z, @NotNull Material material);
+
+}
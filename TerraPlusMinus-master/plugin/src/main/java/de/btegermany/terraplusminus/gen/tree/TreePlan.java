@@ -0,0 +1,75 @@
+package de.btegermany.terraplusminus.gen.tree;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The trees of a chunk, decided once from its terrain data: which template goes where and with which rotation.
+ * Applying the plan to the region being populated is then only a matter of writing the blocks of each template.
+ * Trees can also be placed one at a time, so that the repair of a placeholder chunk can spread them over several ticks.
+ */
+public final class TreePlan {
+
+    public static final TreePlan EMPTY = new TreePlan(new TreeTemplate[0], new int[0], new int[0], 0);
+
+    private final TreeTemplate[] templates;
+    private final int[] columns; // local x << 6 | local z << 2 | rotation
+    private final int[] groundHeights; // before the terrain offset of the world
+    private final int count;
+
+    TreePlan(@NotNull TreeTemplate[] templates, int @NotNull [] columns, int @NotNull [] groundHeights, int count) {
+        this.templates = templates;
+        this.columns = columns;
+        this.groundHeights = groundHeights;
+        this.count = count;
+    }
+
+    static int column(int localX, int localZ, int rotation) {
+        return localX << 6 | localZ << 2 | rotation;
+    }
+
+    /**
+     * Places the planned trees, skipping those that would not fit between the world's height limits.
+     *
+     * @param sink      where to write the blocks
+     * @param chunkX    the x coordinate of the chunk
+     * @param chunkZ    the z coordinate of the chunk
+     * @param yOffset   the terrain offset of the world
+     * @param minHeight the minimum height of the world
+     * @param maxHeight the maximum height of the world
+     * @return the number of trees placed
+     */
+    int apply(@NotNull BlockSink sink, int chunkX, int chunkZ, int yOffset, int minHeight, int maxHeight) {
+        int placed = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (this.place(i, sink, chunkX, chunkZ, yOffset, minHeight, maxHeight)) placed++;
+        }
+        return placed;
+    }
+
+    /**
+     * Places one of the planned trees, unless it would not fit between the world's height limits.
+     *
+     * @param index the index of the tree, below {@link #size()}
+     * @return whether the tree was placed
+     * @see #apply(BlockSink, int, int, int, int, int)
+     */
+    public boolean place(int index, @NotNull BlockSink sink, int chunkX, int chunkZ, int yOffset, int minHeight, int maxHeight) {
+        int groundY = this.groundHeights[index] + yOffset;
+        if (groundY >= maxHeight - 35 || groundY <= minHeight) return false; // Leave room for the crown
+        int column = this.columns[index];
+        this.templates[index].place(sink, chunkX << 4 | column >> 6, groundY + 1, chunkZ << 4 | column >> 2 & 15, column & 3);
+        return true;
+    }
+
+    /**
+     * @return the number of blocks of a planned tree
+     */
+    public int blocks(int index) {
+        return this.templates[index].size();
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+}
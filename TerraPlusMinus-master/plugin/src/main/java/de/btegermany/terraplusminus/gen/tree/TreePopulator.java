@@ -0,0 +1,289 @@
+package de.btegermany.terraplusminus.gen.tree;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import de.btegermany.terraplusminus.Terraplusminus;
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.gen.CustomBiomeProvider;
+import de.btegermany.terraplusminus.metrics.GenerationMetrics;
+import net.buildtheearth.terraminusminus.generator.CachedChunkData;
+import net.buildtheearth.terraminusminus.generator.EarthGeneratorPipelines;
+import net.buildtheearth.terraminusminus.generator.data.TreeCoverBaker;
+import net.buildtheearth.terraminusminus.substitutes.ChunkPos;
+import org.bukkit.Material;
+import org.bukkit.generator.BlockPopulator;
+import org.bukkit.generator.LimitedRegion;
+import org.bukkit.generator.WorldInfo;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+public class TreePopulator extends BlockPopulator {
+
+    private static final int CLIMATES = 31; // Codes of the Koppen map
+    private static final int PLAN_CELLS = 8; // At most one tree per cell, 8x8 cells of 2x2 columns
+    private final TerrainDataService dataService;
+    int yOffset;
+    boolean generateTrees; // Should Trees be added to the Terrain
+    String surface;
+    CustomBiomeProvider customBiomeProvider;
+
+    // Trees that can grow in each climate of the Koppen map, null where none do
+    private final TreeTable[] tables = new TreeTable[CLIMATES];
+    private final Cache<Long, TreePlan> plans = CacheBuilder.newBuilder()
+            .expireAfterAccess(1L, TimeUnit.MINUTES)
+            .maximumSize(4096)
+            .build();
+
+
+    public TreePopulator(CustomBiomeProvider customBiomeProvider, TerrainDataService dataService, int yOffset) {
+        this.customBiomeProvider = customBiomeProvider;
+        this.dataService = dataService;
+        this.yOffset = yOffset;
+        this.generateTrees = Terraplusminus.config.getBoolean("generate_trees");
+        this.surface = Terraplusminus.config.getString("surface_material");
+
+
+        // Load Trees from customTrees.json
+        JsonObject treeTypes = getJSONObject();
+        final TreeLoadingStatistics stats = new TreeLoadingStatistics();
+        Map<String, List<TreeTemplate>> families = new HashMap<>();
+        Map<String, List<Integer>> weights = new HashMap<>();
+        treeTypes.entrySet().forEach(treeTypeEntry -> {
+            final String treeType = treeTypeEntry.getKey();
+            final JsonObject treeSizeVariants = treeTypeEntry.getValue().getAsJsonObject();
+            stats.familyCount++;
+            Terraplusminus.instance.getComponentLogger().debug("Loading tree family {} with {} size variants", treeType, treeSizeVariants.size());
+
+            List<TreeTemplate> templates = families.computeIfAbsent(treeType, k -> new ArrayList<>());
+            List<Integer> templateWeights = weights.computeIfAbsent(treeType, k -> new ArrayList<>());
+
+            treeSizeVariants.entrySet().forEach(variantEntry -> {
+                final String sizeName = variantEntry.getKey();  // s, m, l, ...
+                final JsonObject treeVariants = variantEntry.getValue().getAsJsonObject();
+                Terraplusminus.instance.getComponentLogger().trace("Loading trees of family {} and size {} with {} variants", treeType, sizeName, treeVariants.size());
+
+                treeVariants.entrySet().forEach(treeEntry -> {
+                    final String treeName = treeEntry.getKey();
+                    final JsonObject treeConfig = treeEntry.getValue().getAsJsonObject();
+                    Terraplusminus.instance.getComponentLogger().trace("Loading tree variant {} of size {} and family {}", treeName, sizeName, treeType);
+
+                    TreeTemplate template = compile(treeType + "/" + sizeName + "/" + treeName, treeConfig.get("blocks").getAsJsonArray());
+                    if (template == null) return;
+                    stats.totalVariantCount++;
+                    templates.add(template);
+                    templateWeights.add(treeConfig.has("weight") ? treeConfig.get("weight").getAsInt() : 1);
+                });
+
+            });
+
+        });
+
+        for (int climate = 0; climate < CLIMATES; climate++) {
+            List<TreeTemplate> templates = new ArrayList<>();
+            List<Integer> templateWeights = new ArrayList<>();
+            for (String family : familiesOf(climate)) {
+                templates.addAll(families.getOrDefault(family, List.of()));
+                templateWeights.addAll(weights.getOrDefault(family, List.of()));
+            }
+            if (!templates.isEmpty()) this.tables[climate] = new TreeTable(templates, templateWeights);
+        }
+        Terraplusminus.instance.getComponentLogger().info("Loaded {} custom trees from {} families", stats.totalVariantCount, stats.familyCount);
+
+    }
+
+    /**
+     * @return the tree families that grow in a Koppen climate
+     */
+    private static String[] familiesOf(int climate) {
+        return switch (climate) {
+            case 4, 6, 17 -> new String[]{ "savanna" }; // desert and savanna
+            case 14, 15 -> new String[]{ "oak", "birch" }; // flower forest
+            case 27 -> new String[]{ "spruce" }; // taiga
+            case 28, 29, 30 -> new String[0]; // snowy regions, TODO: trees with snow
+            default -> new String[]{ "oak", "birch" };
+        };
+    }
+
+    /**
+     * Compiles the blocks of a tree variant, skipping blocks whose material is unknown to this server.
+     *
+     * @return the template, or null if the variant has no blocks
+     */
+    private static TreeTemplate compile(String name, JsonArray blocks) {
+        int[] x = new int[blocks.size()];
+        int[] y = new int[blocks.size()];
+        int[] z = new int[blocks.size()];
+        Material[] materials = new Material[blocks.size()];
+        int count = 0;
+        for (JsonElement element : blocks) {
+            JsonObject block = element.getAsJsonObject();
+            Material material = Material.getMaterial(block.get("material").getAsString());
+            if (material == null) {
+                Terraplusminus.instance.getComponentLogger().warn("Unknown material {} in custom tree {}", block.get("material").getAsString(), name);
+                continue;
+            }
+            x[count] = block.get("x").getAsInt();
+            y[count] = block.get("y").getAsInt();
+            z[count] = block.get("z").getAsInt();
+            materials[count++] = material;
+        }
+        if (count == 0) return null;
+        return new TreeTemplate(name, Arrays.copyOf(x, count), Arrays.copyOf(y, count), Arrays.copyOf(z, count), Arrays.copyOf(materials, count));
+    }
+
+    public void populate(@NotNull WorldInfo worldInfo, @NotNull Random random, int x, int z, @NotNull LimitedRegion limitedRegion) {
+        long start = System.nanoTime();
+        try {
+            this.populateTrees(worldInfo, x, z, limitedRegion);
+        } finally {
+            GenerationMetrics.POPULATE.recordSince(start);
+        }
+    }
+
+    private void populateTrees(WorldInfo worldInfo, int x, int z, LimitedRegion limitedRegion) {
+        if (!generateTrees) return;
+        TreePlan plan = this.plans.getIfPresent(chunkKey(x, z));
+        if (plan == null) {
+            // Normally planned when the generator loaded the data, unless the plan expired. Never wait for the network here:
+            // without data the chunk is a placeholder, and the repair queue places its trees once it is repaired
+            CachedChunkData data = this.dataService.getIfCached(new ChunkPos(x, z));
+            if (data == null) {
+                Terraplusminus.instance.getComponentLogger().debug("No terrain data to plan the trees of chunk {}/{} in world {}", x, z, worldInfo.getName());
+                return;
+            }
+            plan = this.plan(worldInfo.getSeed(), x, z, data);
+        }
+        plan.apply(limitedRegion::setType, x, z, this.yOffset, worldInfo.getMinHeight(), worldInfo.getMaxHeight());
+    }
+
+    /**
+     * Decides the trees of a chunk from its terrain data, if that was not done already.
+     * The generator calls this when it loads the data, so populating the chunk later only has to place the blocks.
+     *
+     * @param worldInfo the world the chunk belongs to
+     * @param pos       the chunk position
+     * @param data      the terrain data of the chunk
+     */
+    public void planTrees(@NotNull WorldInfo worldInfo, @NotNull ChunkPos pos, @NotNull CachedChunkData data) {
+        this.getPlan(worldInfo, pos, data);
+    }
+
+    /**
+     * Gets the trees of a chunk, deciding them from its terrain data if that was not done already.
+     * Used to place the trees of placeholder chunks, which are populated before their data is there.
+     *
+     * @param worldInfo the world the chunk belongs to
+     * @param pos       the chunk position
+     * @param data      the terrain data of the chunk
+     * @return the plan, empty if trees are disabled
+     */
+    @NotNull
+    public TreePlan getPlan(@NotNull WorldInfo worldInfo, @NotNull ChunkPos pos, @NotNull CachedChunkData data) {
+        if (!generateTrees) return TreePlan.EMPTY;
+        TreePlan plan = this.plans.getIfPresent(chunkKey(pos.x(), pos.z()));
+        return plan != null ? plan : this.plan(worldInfo.getSeed(), pos.x(), pos.z(), data);
+    }
+
+    /**
+     * The chunk is cut in {@value #PLAN_CELLS}x{@value #PLAN_CELLS} cells, each getting a tree at a random column
+     * with a probability given by the tree cover of that column. Columns under water or covered by a surface block
+     * (roads, buildings, ...) stay empty, as do climates without trees.
+     * <p>
+     * The random source is seeded with the world seed and the chunk position, the way Minecraft seeds its decorations,
+     * so a chunk always gets the same trees in a given world, and different ones in worlds with other seeds.
+     */
+    private TreePlan plan(long worldSeed, int chunkX, int chunkZ, CachedChunkData data) {
+        byte[] treeCover = data.getCustom(EarthGeneratorPipelines.KEY_DATA_TREE_COVER, TreeCoverBaker.FALLBACK_TREE_DENSITY);
+        Random random = new Random(worldSeed);
+        long xFactor = random.nextLong() | 1L;
+        long zFactor = random.nextLong() | 1L;
+        random.setSeed(chunkX * xFactor + chunkZ * zFactor ^ worldSeed);
+        TreeTemplate[] templates = new TreeTemplate[PLAN_CELLS * PLAN_CELLS];
+        int[] columns = new int[templates.length];
+        int[] groundHeights = new int[templates.length];
+        int count = 0;
+
+        int cellSize = 16 / PLAN_CELLS;
+        for (int cellX = 0; cellX < PLAN_CELLS; cellX++) {
+            for (int cellZ = 0; cellZ < PLAN_CELLS; cellZ++) {
+                // Always draw the same numbers per cell, so a tree does not move when a neighbouring cell changes
+                int localX = cellX * cellSize + random.nextInt(cellSize);
+                int localZ = cellZ * cellSize + random.nextInt(cellSize);
+                int chance = random.nextInt(256);
+                int rotation = random.nextInt(TreeTemplate.ROTATIONS);
+                int pick = random.nextInt();
+
+                if (chance >= (treeCover[localX << 4 | localZ] & 0xFF)) continue;
+                int groundY = data.groundHeight(localX, localZ);
+                if (groundY < data.waterHeight(localX, localZ) || data.surfaceBlock(localX, localZ) != null) continue;
+                int climate = customBiomeProvider.getClimate(chunkX << 4 | localX, chunkZ << 4 | localZ);
+                TreeTable table = climate >= 0 && climate < CLIMATES ? this.tables[climate] : null;
+                if (table == null) continue;
+
+                templates[count] = table.pick(pick);
+                columns[count] = TreePlan.column(localX, localZ, rotation);
+                groundHeights[count] = groundY;
+                count++;
+            }
+        }
+
+        TreePlan plan = count == 0 ? TreePlan.EMPTY : new TreePlan(templates, columns, groundHeights, count);
+        this.plans.put(chunkKey(chunkX, chunkZ), plan); // Racing threads compute the same plan, no need to synchronize
+        return plan;
+    }
+
+    private static long chunkKey(int chunkX, int chunkZ) {
+        return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Places a tree picked for a climate, rotated randomly.
+     *
+     * @param limitedRegion the region to write to
+     * @param x             the x coordinate of the trunk
+     * @param y             the y coordinate of the lowest block of the trunk
+     * @param z             the z coordinate of the trunk
+     * @param climate       the Koppen climate code at the tree
+     * @param random        the random source, the one given to the populator so trees are the same for a given seed
+     * @return false if no trees grow in that climate
+     */
+    public boolean placeTree(@NotNull LimitedRegion limitedRegion, int x, int y, int z, int climate, @NotNull Random random) {
+        TreeTable table = climate >= 0 && climate < CLIMATES ? this.tables[climate] : null;
+        if (table == null) return false;
+        table.pick(random.nextInt()).place(limitedRegion::setType, x, y, z, random.nextInt(TreeTemplate.ROTATIONS));
+        return true;
+    }
+
+    public JsonObject getJSONObject() {
+        InputStream is = getClass().getClassLoader().getResourceAsStream("assets/terraplusminus/data/customTrees.json");
+
+        JsonReader reader;
+        reader = new JsonReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        JsonParser parser = new JsonParser();
+        JsonElement jsonElement = parser.parse(reader);
+        JsonObject jsonObject = jsonElement.getAsJsonObject();
+        return jsonObject.get("trees").getAsJsonObject();
+    }
+
+    private static class TreeLoadingStatistics {
+        int familyCount = 0;
+        int totalVariantCount = 0;
+    }
+
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package de.btegermany.terraplusminus.gen.tree;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * The trees that can grow in a climate, with their cumulative weights so one can be picked with a single random number.
+ */
+final class TreeTable {
+
+    private final TreeTemplate[] templates;
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    /**
+     * @param templates the trees
+     * @param weights   the weight of each tree, at least 1
+     */
+    TreeTable(@NotNull List<TreeTemplate> templates, @NotNull List<Integer> weights) {
+        this.templates = templates.toArray(new TreeTemplate[0]);
+        this.cumulativeWeights = new int[this.templates.length];
+        int total = 0;
+        for (int i = 0; i < this.templates.length; i++) {
+            total += Math.max(1, weights.get(i));
+            this.cumulativeWeights[i] = total;
+        }
+        this.totalWeight = total;
+    }
+
+    /**
+     * @param random a uniformly distributed random int
+     * @return a tree, drawn according to the weights
+     */
+    @NotNull
+    TreeTemplate pick(int random) {
+        int value = (int) ((random & 0xFFFFFFFFL) * this.totalWeight >>> 32);
+        int[] cumulative = this.cumulativeWeights;
+        int i = 0;
+        while (cumulative[i] <= value) i++;
+        return this.templates[i];
+    }
+
+}
@@ -0,0 +1,83 @@
+package de.btegermany.terraplusminus.gen.tree;
+
+import org.bukkit.Material;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A custom tree, compiled once from {@code customTrees.json} into flat arrays.
+ * <p>
+ * The offset of each block is packed into an int, ten signed bits per axis, and the offsets of all four rotations are
+ * computed when the template is built. Placing a tree is then a walk over two arrays, without any allocation.
+ */
+final class TreeTemplate {
+
+    static final int ROTATIONS = 4;
+    private static final int AXIS_BITS = 10;
+    private static final int AXIS_MASK = (1 << AXIS_BITS) - 1;
+    private static final int AXIS_LIMIT = 1 << AXIS_BITS - 1;
+
+    private final String name;
+    private final int[][] offsets;
+    private final Material[] materials;
+
+    /**
+     * @param name      the name of the variant, for logging
+     * @param x         the x offset of each block from the origin of the tree
+     * @param y         the y offset of each block from the origin of the tree
+     * @param z         the z offset of each block from the origin of the tree
+     * @param materials the material of each block
+     */
+    TreeTemplate(@NotNull String name, int @NotNull [] x, int @NotNull [] y, int @NotNull [] z, @NotNull Material @NotNull [] materials) {
+        this.name = name;
+        this.materials = materials;
+        this.offsets = new int[ROTATIONS][materials.length];
+        for (int i = 0; i < materials.length; i++) {
+            // Same rotations as the trees were always placed with: 0, 90, 180 and 270 degrees
+            this.offsets[0][i] = pack(x[i], y[i], z[i]);
+            this.offsets[1][i] = pack(-z[i], y[i], x[i]);
+            this.offsets[2][i] = pack(-x[i], y[i], -z[i]);
+            this.offsets[3][i] = pack(z[i], y[i], -x[i]);
+        }
+    }
+
+    private static int pack(int x, int y, int z) {
+        if (x < -AXIS_LIMIT || x >= AXIS_LIMIT || y < -AXIS_LIMIT || y >= AXIS_LIMIT || z < -AXIS_LIMIT || z >= AXIS_LIMIT) {
+            throw new IllegalArgumentException("Tree block offset out of range: " + x + "/" + y + "/" + z);
+        }
+        return (x & AXIS_MASK) << AXIS_BITS * 2 | (y & AXIS_MASK) << AXIS_BITS | z & AXIS_MASK;
+    }
+
+    /**
+     * Places the tree.
+     *
+     * @param sink     where to write the blocks
+     * @param x        the x coordinate of the origin
+     * @param y        the y coordinate of the origin
+     * @param z        the z coordinate of the origin
+     * @param rotation the rotation, between 0 and {@value #ROTATIONS} (exclusive), in quarter turns
+     */
+    void place(@NotNull BlockSink sink, int x, int y, int z, int rotation) {
+        int[] offsets = this.offsets[rotation];
+        Material[] materials = this.materials;
+        for (int i = 0; i < offsets.length; i++) {
+            int packed = offsets[i];
+            // Sign extend each field by shifting it to the top of the int and back
+            sink.setType(
+                    x + (packed << 2 >> 22),
+                    y + (packed << 12 >> 22),
+                    z + (packed << 22 >> 22),
+                    materials[i]
+            );
+        }
+    }
+
+    int size() {
+        return this.materials.length;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+
+}
@@ -0,0 +1,45 @@
+package de.btegermany.terraplusminus.metrics;
+
+import de.btegermany.terraplusminus.Terraplusminus;
+import org.bstats.bukkit.Metrics;
+import org.bstats.charts.SimplePie;
+import org.bstats.charts.SingleLineChart;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Custom bStats charts, see https://bstats.org/plugin/bukkit/Terraplusminus/28392.
+ * Line charts report what happened since the previous submission, bStats sums them over servers.
+ */
+public final class BStatsCharts {
+
+    private BStatsCharts() {
+        throw new IllegalStateException();
+    }
+
+    public static void register(Metrics metrics) {
+        metrics.addCustomChart(new SingleLineChart("generated_chunks", delta(GenerationMetrics.CHUNKS_GENERATED)));
+        metrics.addCustomChart(new SingleLineChart("placeholder_chunks", delta(GenerationMetrics.PLACEHOLDER_CHUNKS)));
+        metrics.addCustomChart(new SingleLineChart("host_pauses", delta(GenerationMetrics.HOST_PAUSES)));
+        metrics.addCustomChart(new SimplePie("median_fetch_latency", () -> {
+            if (GenerationMetrics.FETCH_UPSTREAM.count() == 0) return null; // Not reported
+            double median = GenerationMetrics.FETCH_UPSTREAM.quantileMillis(0.5);
+            if (median <= 250) return "< 250 ms";
+            if (median <= 1000) return "250 ms - 1 s";
+            if (median <= 4000) return "1 s - 4 s";
+            return "> 4 s";
+        }));
+        metrics.addCustomChart(new SimplePie("chunk_data_store", () -> String.valueOf(Terraplusminus.config.getBoolean("chunk_data_store", true))));
+    }
+
+    private static Callable<Integer> delta(LongAdder counter) {
+        AtomicLong previous = new AtomicLong();
+        return () -> {
+            long current = counter.sum();
+            return (int) Math.min(Integer.MAX_VALUE, current - previous.getAndSet(current));
+        };
+    }
+
+}
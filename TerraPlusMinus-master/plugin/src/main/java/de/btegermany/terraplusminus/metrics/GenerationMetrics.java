@@ -0,0 +1,227 @@
+package de.btegermany.terraplusminus.metrics;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheStats;
+import de.btegermany.terraplusminus.data.AdaptiveRateLimiter;
+import de.btegermany.terraplusminus.data.CompactChunkCache;
+import de.btegermany.terraplusminus.data.TerrainDataService;
+import de.btegermany.terraplusminus.gen.ChunkRepairQueue;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide registry of the generation metrics.
+ * <p>
+ * Hot paths only ever touch {@link LongAdder}s and {@link Histogram}s.
+ * Everything else (cache statistics, rate limiter state, repair queue size) is read from its owner when a report is built.
+ * Reports are available through {@code /tplus stats}, the {@link OpenMetricsEndpoint} and bStats.
+ */
+public final class GenerationMetrics {
+
+    public static final Histogram FETCH_UPSTREAM = new Histogram();
+    public static final Histogram FETCH_STORE = new Histogram();
+    public static final Histogram NOISE = new Histogram();
+    public static final Histogram SURFACE = new Histogram();
+    public static final Histogram POPULATE = new Histogram();
+
+    public static final LongAdder UPSTREAM_FETCHES = new LongAdder();
+    public static final LongAdder UPSTREAM_FAILURES = new LongAdder();
+    public static final LongAdder HOST_PAUSES = new LongAdder();
+    public static final LongAdder CHUNKS_GENERATED = new LongAdder();
+    public static final LongAdder PLACEHOLDER_CHUNKS = new LongAdder();
+    public static final LongAdder REPAIRED_CHUNKS = new LongAdder();
+
+    private static final Map<String, Histogram> HOST_FETCHES = new ConcurrentHashMap<>(); // Bounded by the gateway's allowed hosts
+    private static final Set<Cache<?, ?>> TICK_CACHES = ConcurrentHashMap.newKeySet();
+    private static final Set<CompactChunkCache> COMPACT_CACHES = ConcurrentHashMap.newKeySet();
+
+    private GenerationMetrics() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param host an upstream host
+     * @return the histogram of the requests relayed to that host by the upstream gateway, from sending to the full response
+     */
+    public static Histogram hostFetch(@NotNull String host) {
+        return HOST_FETCHES.computeIfAbsent(host, h -> new Histogram());
+    }
+
+    /**
+     * Adds a generator's short-lived cache to the reported statistics. It must record its stats.
+     */
+    public static void registerTickCache(@NotNull Cache<?, ?> cache) {
+        TICK_CACHES.add(cache);
+    }
+
+    public static void unregisterTickCache(@NotNull Cache<?, ?> cache) {
+        TICK_CACHES.remove(cache);
+    }
+
+    static CacheStats tickCacheStats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (Cache<?, ?> cache : TICK_CACHES) {
+            stats = stats.plus(cache.stats());
+        }
+        return stats;
+    }
+
+    public static void registerCompactCache(@NotNull CompactChunkCache cache) {
+        COMPACT_CACHES.add(cache);
+    }
+
+    public static void unregisterCompactCache(@NotNull CompactChunkCache cache) {
+        COMPACT_CACHES.remove(cache);
+    }
+
+    /**
+     * @return the sums over all compact caches of: chunks, used bytes, budget, hits, misses and evictions
+     */
+    static long[] compactCacheStats() {
+        long[] stats = new long[6];
+        for (CompactChunkCache cache : COMPACT_CACHES) {
+            stats[0] += cache.size();
+            stats[1] += cache.usedBytes();
+            stats[2] += cache.getBudget();
+            stats[3] += cache.hits();
+            stats[4] += cache.misses();
+            stats[5] += cache.evictions();
+        }
+        return stats;
+    }
+
+    static int repairQueueSize() {
+        ChunkRepairQueue queue = ChunkRepairQueue.get();
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return a human-readable summary, one line per topic
+     */
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "Chunks: %d generated, %d placeholders, %d repaired, %d waiting for repair",
+                CHUNKS_GENERATED.sum(), PLACEHOLDER_CHUNKS.sum(), REPAIRED_CHUNKS.sum(), repairQueueSize()));
+        lines.add("Fetch upstream: " + describeTimings(FETCH_UPSTREAM) + ", " + UPSTREAM_FAILURES.sum() + " failed");
+        lines.add("Fetch store: " + describeTimings(FETCH_STORE));
+        new TreeMap<>(HOST_FETCHES).forEach((host, histogram) -> lines.add("Fetch from " + host + ": " + describeTimings(histogram)));
+        lines.add("Noise: " + describeTimings(NOISE));
+        lines.add("Surface: " + describeTimings(SURFACE));
+        lines.add("Populate: " + describeTimings(POPULATE));
+        lines.add("Terrain data cache: " + describeCache(TerrainDataService.cacheStats()));
+        lines.add("Tick cache: " + describeCache(tickCacheStats()));
+        long[] compact = compactCacheStats();
+        lines.add(String.format(Locale.ROOT, "Compact cache: %d chunks in %.1f of %.1f MB, %d hits, %d misses, %d evictions",
+                compact[0], compact[1] / 1048576.0d, compact[2] / 1048576.0d, compact[3], compact[4], compact[5]));
+        StringBuilder windows = new StringBuilder();
+        for (Map.Entry<String, Integer> window : AdaptiveRateLimiter.windows().entrySet()) {
+            if (!windows.isEmpty()) windows.append(", ");
+            windows.append(window.getKey()).append('=').append(window.getValue());
+        }
+        lines.add("Requests: " + AdaptiveRateLimiter.inFlight() + " in flight, windows " + windows + ", " + HOST_PAUSES.sum() + " host pauses");
+        return lines;
+    }
+
+    private static String describeTimings(Histogram histogram) {
+        return String.format(Locale.ROOT, "%d, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms",
+                histogram.count(), histogram.quantileMillis(0.5), histogram.quantileMillis(0.95), histogram.quantileMillis(0.99));
+    }
+
+    private static String describeCache(CacheStats stats) {
+        return String.format(Locale.ROOT, "%.1f%% hits (%d hits, %d misses, %d evictions)",
+                stats.hitRate() * 100, stats.hitCount(), stats.missCount(), stats.evictionCount());
+    }
+
+    /**
+     * Writes all metrics in the OpenMetrics text format.
+     */
+    public static void writeOpenMetrics(@NotNull StringBuilder out) {
+        writeHistogram(out, "terraplusminus_fetch_seconds", "Time to get the terrain data of a chunk", "source", new String[]{"upstream", "store"}, FETCH_UPSTREAM, FETCH_STORE);
+        Map<String, Histogram> hosts = new TreeMap<>(HOST_FETCHES);
+        writeHistogram(out, "terraplusminus_host_fetch_seconds", "Time of the upstream requests to each host", "host",
+                hosts.keySet().toArray(String[]::new), hosts.values().toArray(Histogram[]::new));
+        writeHistogram(out, "terraplusminus_generation_seconds", "Time spent in each generation stage of a chunk", "stage", new String[]{"noise", "surface", "populate"}, NOISE, SURFACE, POPULATE);
+
+        writeCounter(out, "terraplusminus_upstream_fetches", "Chunks fetched from the upstream APIs", UPSTREAM_FETCHES.sum());
+        writeCounter(out, "terraplusminus_upstream_failures", "Chunk fetches that failed", UPSTREAM_FAILURES.sum());
+        writeCounter(out, "terraplusminus_host_pauses", "Times an upstream host was paused after throttling or dropping requests", HOST_PAUSES.sum());
+        writeCounter(out, "terraplusminus_chunks_generated", "Chunks generated with terrain data", CHUNKS_GENERATED.sum());
+        writeCounter(out, "terraplusminus_placeholder_chunks", "Chunks generated as placeholders because their data was missing", PLACEHOLDER_CHUNKS.sum());
+        writeCounter(out, "terraplusminus_repaired_chunks", "Placeholder chunks rewritten with their terrain data", REPAIRED_CHUNKS.sum());
+        writeGauge(out, "terraplusminus_repair_queue_size", "Placeholder chunks waiting for their terrain data", repairQueueSize());
+
+        writeCacheStats(out, "terraplusminus_cache", TerrainDataService.cacheStats(), tickCacheStats());
+        long[] compact = compactCacheStats();
+        writeGauge(out, "terraplusminus_compact_cache_chunks", "Chunks held by the off-heap compact cache", compact[0]);
+        writeGauge(out, "terraplusminus_compact_cache_bytes", "Bytes used by the off-heap compact cache", compact[1]);
+        writeGauge(out, "terraplusminus_compact_cache_budget_bytes", "Byte budget of the off-heap compact cache", compact[2]);
+        writeCounter(out, "terraplusminus_compact_cache_hits", "Compact cache lookups that found the data", compact[3]);
+        writeCounter(out, "terraplusminus_compact_cache_misses", "Compact cache lookups that did not find the data", compact[4]);
+        writeCounter(out, "terraplusminus_compact_cache_evictions", "Chunks evicted from the compact cache", compact[5]);
+
+        writeGauge(out, "terraplusminus_requests_in_flight", "Upstream requests currently in flight", AdaptiveRateLimiter.inFlight());
+        out.append("# TYPE terraplusminus_request_window gauge\n");
+        out.append("# HELP terraplusminus_request_window Allowed concurrent requests per upstream host\n");
+        AdaptiveRateLimiter.windows().forEach((host, window) ->
+                out.append("terraplusminus_request_window{host=\"").append(host).append("\"} ").append(window).append('\n'));
+        out.append("# EOF\n");
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String help, String label, String[] values, Histogram... histograms) {
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        for (int h = 0; h < histograms.length; h++) {
+            String labels = label + "=\"" + values[h] + "\"";
+            long[] counts = histograms[h].counts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String bound = i == counts.length - 1 ? "+Inf" : String.valueOf(Histogram.upperBoundSeconds(i));
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+            out.append(name).append("_sum{").append(labels).append("} ").append(histograms[h].sumSeconds()).append('\n');
+        }
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append(name).append("_total ").append(value).append('\n');
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeCacheStats(StringBuilder out, String prefix, CacheStats terrainData, CacheStats tick) {
+        String[] events = {"hits", "misses", "evictions"};
+        String[] helps = {"Cache lookups that found the data", "Cache lookups that did not find the data", "Entries evicted from the cache"};
+        for (int e = 0; e < events.length; e++) {
+            String name = prefix + "_" + events[e];
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append("# HELP ").append(name).append(' ').append(helps[e]).append('\n');
+            out.append(name).append("_total{cache=\"terrain_data\"} ").append(cacheValue(terrainData, e)).append('\n');
+            out.append(name).append("_total{cache=\"tick\"} ").append(cacheValue(tick, e)).append('\n');
+        }
+    }
+
+    private static long cacheValue(CacheStats stats, int event) {
+        return switch (event) {
+            case 0 -> stats.hitCount();
+            case 1 -> stats.missCount();
+            default -> stats.evictionCount();
+        };
+    }
+
+}
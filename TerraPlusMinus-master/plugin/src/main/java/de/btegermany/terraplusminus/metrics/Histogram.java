@@ -0,0 +1,86 @@
+package de.btegermany.terraplusminus.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed, power of two buckets.
+ * <p>
+ * Bucket {@code i} counts durations up to {@code 2^i} microseconds, the last one everything above.
+ * Recording is a few arithmetic operations and two {@link LongAdder} increments, cheap enough for per chunk timings.
+ * Quantiles are estimated as the upper bound of the bucket they fall in, i.e. within a factor of two.
+ */
+public final class Histogram {
+
+    static final int BUCKETS = 28; // Up to about 2 minutes
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = micros == 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+        this.buckets[bucket].increment();
+        this.sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        this.recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return a consistent enough copy of the bucket counts, for reporting
+     */
+    long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = this.buckets[i].sum();
+        }
+        return counts;
+    }
+
+    double sumSeconds() {
+        return this.sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the upper bound of a bucket, in seconds
+     */
+    static double upperBoundSeconds(int bucket) {
+        return (1L << bucket) / 1_000_000d;
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1
+     * @return an estimate of the given quantile in milliseconds, or 0 if nothing was recorded
+     */
+    public double quantileMillis(double quantile) {
+        long[] counts = this.counts();
+        long total = 0;
+        for (long count : counts) total += count;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return upperBoundSeconds(i) * 1000;
+        }
+        return upperBoundSeconds(BUCKETS - 1) * 1000;
+    }
+
+    public long count() {
+        long total = 0;
+        for (LongAdder bucket : this.buckets) total += bucket.sum();
+        return total;
+    }
+
+}
@@ -0,0 +1,71 @@
+package de.btegermany.terraplusminus.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.btegermany.terraplusminus.Terraplusminus;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves {@link GenerationMetrics} in the OpenMetrics text format on {@code /metrics}, for Prometheus and compatible scrapers.
+ * It listens on the loopback interface by default, so it is not reachable from outside unless configured to.
+ */
+public final class OpenMetricsEndpoint {
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    @Nullable private static HttpServer server;
+
+    private OpenMetricsEndpoint() {
+        throw new IllegalStateException();
+    }
+
+    public static synchronized void start() {
+        if (server != null || !Terraplusminus.config.getBoolean("metrics.endpoint.enabled", false)) return;
+        String address = Terraplusminus.config.getString("metrics.endpoint.bind_address", "127.0.0.1");
+        int port = Terraplusminus.config.getInt("metrics.endpoint.port", 9940);
+        try {
+            server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            Terraplusminus.instance.getComponentLogger().error("Failed to start the metrics endpoint on {}:{}", address, port, e);
+            return;
+        }
+        server.createContext("/metrics", OpenMetricsEndpoint::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Terraplusminus metrics endpoint");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        Terraplusminus.instance.getComponentLogger().info("Serving metrics on http://{}:{}/metrics", address, port);
+    }
+
+    public static synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        server = null;
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder body = new StringBuilder(8192);
+            GenerationMetrics.writeOpenMetrics(body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+    }
+
+}
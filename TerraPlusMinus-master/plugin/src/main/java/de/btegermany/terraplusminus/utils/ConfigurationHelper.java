@@ -4,13 +4,18 @@ import de.btegermany.terraplusminus.Terraplusminus;
 import org.bukkit.Material;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 public final class ConfigurationHelper {
     private static final List<LinkedWorld> worlds = convertList(Terraplusminus.config.getMapList("linked_worlds.worlds"));
+    private static final Map<String, LinkedWorld> nextWorlds = neighbourIndex(worlds, 1);
+    private static final Map<String, LinkedWorld> previousWorlds = neighbourIndex(worlds, -1);
 
     /**
      * Returns a material from the configuration,
@@ -50,42 +55,34 @@ public final class ConfigurationHelper {
         return new LinkedWorld(worldName, offset);
     }
 
-    public static LinkedWorld getNextServerName(String currentWorldName) {
-        int currentIndex = -1;
-
+    /**
+     * Builds the index of the world above or below each linked world, keyed by lower case world name.
+     * Like the list, names that appear more than once resolve to their first occurrence.
+     */
+    private static Map<String, LinkedWorld> neighbourIndex(List<LinkedWorld> worlds, int direction) {
+        Map<String, LinkedWorld> index = new HashMap<>();
         for (int i = 0; i < worlds.size(); i++) {
-            LinkedWorld world = worlds.get(i);
-            if (world.getWorldName().equalsIgnoreCase(currentWorldName)) {
-                currentIndex = i;
-                break;
+            int neighbour = i + direction;
+            String name = worlds.get(i).getWorldName().toLowerCase(Locale.ROOT);
+            if (neighbour >= 0 && neighbour < worlds.size()) {
+                index.putIfAbsent(name, worlds.get(neighbour));
+            } else {
+                index.putIfAbsent(name, null); // The first occurrence has no neighbour, do not fall back to a later one
             }
         }
+        return index;
+    }
 
-        if (currentIndex >= 0 && currentIndex < worlds.size() - 1) {
-            return worlds.get(currentIndex + 1);
-        } else {
-            // Entweder wurde die Welt nicht gefunden oder sie ist die letzte Welt in der Liste
-            return null;
-        }
+    @Nullable
+    public static LinkedWorld getNextServerName(String currentWorldName) {
+        // Either the world was not found or it is the last world in the list if there is no entry
+        return nextWorlds.get(currentWorldName.toLowerCase(Locale.ROOT));
     }
 
+    @Nullable
     public static LinkedWorld getPreviousServerName(String currentWorldName) {
-        int currentIndex = -1;
-
-        for (int i = 0; i < worlds.size(); i++) {
-            LinkedWorld world = worlds.get(i);
-            if (world.getWorldName().equalsIgnoreCase(currentWorldName)) {
-                currentIndex = i;
-                break;
-            }
-        }
-
-        if (currentIndex > 0) {
-            return worlds.get(currentIndex - 1);
-        } else {
-            // Entweder wurde die Welt nicht gefunden oder sie ist die erste Welt in der Liste
-            return null;
-        }
+        // Either the world was not found or it is the first world in the list if there is no entry
+        return previousWorlds.get(currentWorldName.toLowerCase(Locale.ROOT));
     }
 
     public static List<LinkedWorld> getWorlds() {
@@ -1,29 +0,0 @@
-package de.btegermany.terraplusminus.gen;
-
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
-
-public class ChunkStatusCache {
-    private static final Set<Long> failed = Collections.synchronizedSet(new HashSet<>());
-
-    private static long getChunkKey(int x, int z) {
-        return ((long) x << 32) | (z & 0xffffffffL);
-    }
-
-    public static void markAsFailed(int x, int z) {
-        failed.add(getChunkKey(x, z));
-    }
-
-    public static boolean isFailed(int x, int z) {
-        return failed.contains(getChunkKey(x, z));
-    }
-
-    public static void removeFailure(int x, int z) {
-        failed.remove(getChunkKey(x, z));
-    }
-
-    public static void clearAll() {
-        failed.clear();
-    }
-}
\ No newline at end of file
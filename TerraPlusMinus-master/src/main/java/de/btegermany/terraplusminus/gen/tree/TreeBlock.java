@@ -1,51 +0,0 @@
-package de.btegermany.terraplusminus.gen.tree;
-
-import org.bukkit.Material;
-
-public class TreeBlock {
-
-    private int x;
-    private int y;
-    private int z;
-
-    private Material material;
-
-    public TreeBlock(int x, int y, int z, Material material) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.material = material;
-    }
-
-    public int getX() {
-        return x;
-    }
-
-    public void setX(int x) {
-        this.x = x;
-    }
-
-    public int getY() {
-        return y;
-    }
-
-    public void setY(int y) {
-        this.y = y;
-    }
-
-    public int getZ() {
-        return z;
-    }
-
-    public void setZ(int z) {
-        this.z = z;
-    }
-
-    public Material getMaterial() {
-        return material;
-    }
-
-    public void setMaterial(Material material) {
-        this.material = material;
-    }
-}